@@ -25,5 +25,14 @@ public interface ModContext {
      * @return API实例
      */
     <T> T getAPI(Class<T> apiClass);
+    
+    /**
+     * 向其他模组暴露API（其他模组通过IModInteractor.getModAPI获取）
+     * 其他模组需要在mod.json中声明对本模组的依赖，才能看到API接口类
+     * @param apiClass API接口类
+     * @param instance API实现
+     * @param <T> API类型
+     */
+    <T> void registerModAPI(Class<T> apiClass, T instance);
 }
 
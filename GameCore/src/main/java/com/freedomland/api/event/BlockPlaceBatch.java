@@ -0,0 +1,113 @@
+package com.freedomland.api.event;
+
+import com.freedomland.api.block.IBlock;
+import com.freedomland.api.player.IPlayer;
+import java.util.Arrays;
+
+/**
+ * 批量方块放置事件（世界编辑、区块生成等）
+ * 按列存储，避免为每个方块创建BlockPlaceEvent
+ */
+public class BlockPlaceBatch extends EventBatch<BlockPlaceEvent> {
+    
+    private static final int DEFAULT_CAPACITY = 64;
+    
+    private IPlayer[] players;
+    private IBlock[] blocks;
+    private int[] xs;
+    private int[] ys;
+    private int[] zs;
+    private int size;
+    
+    /**
+     * 构造函数
+     */
+    public BlockPlaceBatch() {
+        this(DEFAULT_CAPACITY);
+    }
+    
+    /**
+     * 构造函数
+     * @param capacity 初始容量
+     */
+    public BlockPlaceBatch(int capacity) {
+        int initial = Math.max(1, capacity);
+        this.players = new IPlayer[initial];
+        this.blocks = new IBlock[initial];
+        this.xs = new int[initial];
+        this.ys = new int[initial];
+        this.zs = new int[initial];
+    }
+    
+    /**
+     * 追加一条方块放置
+     * @param player 放置者（非玩家操作可为null）
+     * @return 该条目的下标
+     */
+    public int add(IPlayer player, IBlock block, int x, int y, int z) {
+        if (size == blocks.length) {
+            int newCapacity = size * 2;
+            players = Arrays.copyOf(players, newCapacity);
+            blocks = Arrays.copyOf(blocks, newCapacity);
+            xs = Arrays.copyOf(xs, newCapacity);
+            ys = Arrays.copyOf(ys, newCapacity);
+            zs = Arrays.copyOf(zs, newCapacity);
+        }
+        players[size] = player;
+        blocks[size] = block;
+        xs[size] = x;
+        ys[size] = y;
+        zs[size] = z;
+        return size++;
+    }
+    
+    /**
+     * 清空批次以便复用
+     */
+    public void clear() {
+        Arrays.fill(players, 0, size, null);
+        Arrays.fill(blocks, 0, size, null);
+        size = 0;
+        clearCancelled();
+    }
+    
+    @Override
+    public int size() {
+        return size;
+    }
+    
+    @Override
+    public Class<BlockPlaceEvent> getEventClass() {
+        return BlockPlaceEvent.class;
+    }
+    
+    @Override
+    public BlockPlaceEvent toEvent(int index) {
+        return BlockPlaceEvent.obtain(players[index], blocks[index], xs[index], ys[index], zs[index]);
+    }
+    
+    @Override
+    public void releaseEvent(BlockPlaceEvent event) {
+        event.recycle();
+    }
+    
+    public IPlayer getPlayer(int index) {
+        return players[index];
+    }
+    
+    public IBlock getBlock(int index) {
+        return blocks[index];
+    }
+    
+    public int getX(int index) {
+        return xs[index];
+    }
+    
+    public int getY(int index) {
+        return ys[index];
+    }
+    
+    public int getZ(int index) {
+        return zs[index];
+    }
+}
@@ -5,12 +5,15 @@ import com.freedomland.api.player.IPlayer;
 
 /**
  * 方块放置事件
+ * 高频场景可通过obtain()/recycle()复用对象
  */
 public class BlockPlaceEvent extends GameEvent {
     
-    private final IPlayer player;
-    private final IBlock block;
-    private final int x, y, z;
+    private static final EventPool<BlockPlaceEvent> POOL = new EventPool<>(BlockPlaceEvent::new);
+    
+    private IPlayer player;
+    private IBlock block;
+    private int x, y, z;
     
     /**
      * 构造函数
@@ -23,10 +26,45 @@ public class BlockPlaceEvent extends GameEvent {
         this.z = z;
     }
     
+    /**
+     * 对象池使用的构造函数
+     */
+    private BlockPlaceEvent() {
+    }
+    
+    /**
+     * 从对象池获取事件（分发结束后需调用recycle()归还）
+     */
+    public static BlockPlaceEvent obtain(IPlayer player, IBlock block, int x, int y, int z) {
+        BlockPlaceEvent event = POOL.acquire();
+        event.player = player;
+        event.block = block;
+        event.x = x;
+        event.y = y;
+        event.z = z;
+        return event;
+    }
+    
+    /**
+     * 归还对象池
+     */
+    public void recycle() {
+        POOL.release(this);
+    }
+    
+    @Override
+    protected void reset() {
+        super.reset();
+        player = null;
+        block = null;
+        x = y = z = 0;
+    }
+    
     /**
      * 获取放置方块的玩家
      */
     public IPlayer getPlayer() {
+        checkNotRecycled();
         return player;
     }
     
@@ -34,6 +72,7 @@ public class BlockPlaceEvent extends GameEvent {
      * 获取放置的方块
      */
     public IBlock getBlock() {
+        checkNotRecycled();
         return block;
     }
     
@@ -41,6 +80,7 @@ public class BlockPlaceEvent extends GameEvent {
      * 获取放置位置X坐标
      */
     public int getX() {
+        checkNotRecycled();
         return x;
     }
     
@@ -48,6 +88,7 @@ public class BlockPlaceEvent extends GameEvent {
      * 获取放置位置Y坐标
      */
     public int getY() {
+        checkNotRecycled();
         return y;
     }
     
@@ -55,7 +96,7 @@ public class BlockPlaceEvent extends GameEvent {
      * 获取放置位置Z坐标
      */
     public int getZ() {
+        checkNotRecycled();
         return z;
     }
 }
-
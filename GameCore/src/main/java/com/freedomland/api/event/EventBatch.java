@@ -0,0 +1,70 @@
+package com.freedomland.api.event;
+
+import java.util.BitSet;
+
+/**
+ * 批量事件基类
+ * 一次性携带多条同类事件数据（如批量放置方块），监听器可通过位图逐条取消
+ * @param <T> 对应的单条事件类型
+ */
+public abstract class EventBatch<T extends GameEvent> {
+    
+    private final BitSet cancelled = new BitSet();
+    
+    /**
+     * 获取批次中的条目数量
+     */
+    public abstract int size();
+    
+    /**
+     * 获取对应的单条事件类型（用于分发给普通监听器）
+     */
+    public abstract Class<T> getEventClass();
+    
+    /**
+     * 将第index条数据生成为单条事件
+     * 仅在存在未使用批量接口的监听器时调用
+     */
+    public abstract T toEvent(int index);
+    
+    /**
+     * 单条事件分发结束后调用，子类可将toEvent创建的事件归还对象池
+     */
+    public void releaseEvent(T event) {
+    }
+    
+    /**
+     * 检查第index条是否已被取消
+     */
+    public boolean isCancelled(int index) {
+        return cancelled.get(index);
+    }
+    
+    /**
+     * 设置第index条是否被取消
+     */
+    public void setCancelled(int index, boolean cancel) {
+        cancelled.set(index, cancel);
+    }
+    
+    /**
+     * 获取取消位图（第i位为1表示第i条被取消，可直接批量修改）
+     */
+    public BitSet getCancelled() {
+        return cancelled;
+    }
+    
+    /**
+     * 获取已取消的条目数量
+     */
+    public int getCancelledCount() {
+        return cancelled.cardinality();
+    }
+    
+    /**
+     * 清空取消状态（子类复用批次对象时调用）
+     */
+    protected void clearCancelled() {
+        cancelled.clear();
+    }
+}
@@ -0,0 +1,96 @@
+package com.freedomland.api.event;
+
+import java.util.ArrayDeque;
+import java.util.function.Supplier;
+
+/**
+ * 事件对象池
+ * 用于高频事件（方块放置、玩家移动等）复用事件对象，减少新生代垃圾
+ * 
+ * 使用约定：
+ * 1. acquire()获取事件并填充字段，post()后读取结果，再调用release()归还
+ * 2. 监听器不得在onEvent返回后保留事件引用；池化事件不能用于postAsync
+ * 3. 调试模式下归还的事件不再复用，之后的任何访问都会抛出IllegalStateException
+ * 4. 同一对象只能归还一次，重复归还会被忽略（调试模式下抛出IllegalStateException）
+ * 
+ * 每个线程持有独立的空闲栈，获取和归还均无需同步
+ */
+public final class EventPool<T extends GameEvent> {
+    
+    private static final int DEFAULT_MAX_PER_THREAD = 64;
+    
+    private static volatile boolean debugEnabled = false;
+    
+    private final Supplier<T> factory;
+    private final int maxPerThread;
+    private final ThreadLocal<ArrayDeque<T>> freeList;
+    
+    /**
+     * 构造函数
+     * @param factory 创建新事件对象的工厂
+     */
+    public EventPool(Supplier<T> factory) {
+        this(factory, DEFAULT_MAX_PER_THREAD);
+    }
+    
+    /**
+     * 构造函数
+     * @param factory 创建新事件对象的工厂
+     * @param maxPerThread 每个线程最多缓存的空闲对象数
+     */
+    public EventPool(Supplier<T> factory, int maxPerThread) {
+        this.factory = factory;
+        this.maxPerThread = maxPerThread;
+        this.freeList = ThreadLocal.withInitial(() -> new ArrayDeque<>(maxPerThread));
+    }
+    
+    /**
+     * 获取一个已重置的事件对象
+     */
+    public T acquire() {
+        T event = freeList.get().pollLast();
+        if (event == null) {
+            event = factory.get();
+        }
+        event.setRecycled(false);
+        return event;
+    }
+    
+    /**
+     * 归还事件对象（分发结束后调用）
+     * 重复归还同一对象会被忽略（否则之后两次acquire()会拿到同一个对象），调试模式下抛出异常
+     * @throws IllegalStateException 调试模式下重复归还
+     */
+    public void release(T event) {
+        if (event.isRecycled()) {
+            if (debugEnabled) {
+                throw new IllegalStateException("池化事件被重复归还: " + event.getClass().getName());
+            }
+            return;
+        }
+        event.reset();
+        event.setRecycled(true);
+        if (debugEnabled) {
+            // 调试模式：不再复用，任何访问都会报错
+            return;
+        }
+        ArrayDeque<T> free = freeList.get();
+        if (free.size() < maxPerThread) {
+            free.addLast(event);
+        }
+    }
+    
+    /**
+     * 开启/关闭池化调试模式（检测监听器在分发后仍持有事件）
+     */
+    public static void setDebugEnabled(boolean enabled) {
+        debugEnabled = enabled;
+    }
+    
+    /**
+     * 是否开启池化调试模式
+     */
+    public static boolean isDebugEnabled() {
+        return debugEnabled;
+    }
+}
@@ -0,0 +1,14 @@
+package com.freedomland.api.event;
+
+/**
+ * 事件监听器优先级
+ * 按声明顺序依次执行：高优先级监听器先执行，MONITOR最后执行
+ */
+public enum EventPriority {
+    HIGHEST,  // 最先执行（如区域保护）
+    HIGH,
+    NORMAL,   // 默认优先级
+    LOW,
+    LOWEST,
+    MONITOR   // 仅观察最终结果，不应修改事件；事件取消后仍会执行
+}
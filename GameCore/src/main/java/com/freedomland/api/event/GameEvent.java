@@ -8,10 +8,14 @@ public abstract class GameEvent {
     
     private boolean cancelled;
     
+    // 池化事件已归还对象池（防止重复归还；调试模式下还用于检测归还后的访问）
+    private boolean recycled;
+    
     /**
      * 检查事件是否已被取消
      */
     public boolean isCancelled() {
+        checkNotRecycled();
         return cancelled;
     }
     
@@ -19,7 +23,40 @@ public abstract class GameEvent {
      * 设置事件是否被取消
      */
     public void setCancelled(boolean cancelled) {
+        checkNotRecycled();
         this.cancelled = cancelled;
     }
+    
+    /**
+     * 重置事件状态（归还对象池时调用）
+     * 子类重写时需清空自身字段并调用super.reset()
+     */
+    protected void reset() {
+        cancelled = false;
+    }
+    
+    /**
+     * 调试模式下检查事件是否在归还对象池后仍被访问
+     * @throws IllegalStateException 监听器在分发结束后仍持有并访问池化事件
+     */
+    protected final void checkNotRecycled() {
+        if (recycled && EventPool.isDebugEnabled()) {
+            throw new IllegalStateException("池化事件在分发结束后仍被访问: " + getClass().getName() +
+                "（监听器不应在onEvent返回后保留事件引用）");
+        }
+    }
+    
+    /**
+     * 设置回收标记（由EventPool调用）
+     */
+    void setRecycled(boolean recycled) {
+        this.recycled = recycled;
+    }
+    
+    /**
+     * 是否已归还对象池
+     */
+    boolean isRecycled() {
+        return recycled;
+    }
 }
-
@@ -8,11 +8,30 @@ public interface IEventBus {
     
     /**
      * 订阅事件（支持玩家操作、方块放置、世界加载等事件）
+     * 订阅父类事件时，所有子类事件同样会分发给该监听器
+     * 默认优先级为NORMAL，事件被取消后不再接收
      * @param eventClass 事件类（如BlockPlaceEvent.class）
      * @param listener 事件监听器（自定义逻辑）
      */
     <T extends GameEvent> void subscribe(Class<T> eventClass, EventListener<T> listener);
     
+    /**
+     * 按优先级订阅事件
+     * @param eventClass 事件类
+     * @param listener 事件监听器
+     * @param priority 优先级（高优先级先执行）
+     * @param receiveCancelled 事件被取消后是否仍接收（MONITOR始终接收）
+     */
+    <T extends GameEvent> void subscribe(Class<T> eventClass, EventListener<T> listener,
+                                         EventPriority priority, boolean receiveCancelled);
+    
+    /**
+     * 按优先级订阅事件（事件被取消后不再接收）
+     */
+    default <T extends GameEvent> void subscribe(Class<T> eventClass, EventListener<T> listener, EventPriority priority) {
+        subscribe(eventClass, listener, priority, false);
+    }
+    
     /**
      * 取消订阅事件
      * @param eventClass 事件类
@@ -26,6 +45,35 @@ public interface IEventBus {
      */
     <T extends GameEvent> void post(T event);
     
+    /**
+     * 异步发布事件
+     * 监听器在后台线程执行，同一模组的监听器按发布顺序执行；不同模组的监听器并行收到同一个事件对象，
+     * 因此异步监听器只能读取事件，不得修改或取消它（取消不会影响其他监听器，发布者也无法得知）。
+     * 是否通知不接收已取消事件的监听器，按发布时事件的取消状态决定。适用于日志、统计等通知类场景
+     * @param event 事件实例（发布后不应再修改）
+     */
+    <T extends GameEvent> void postAsync(T event);
+    
+    /**
+     * 订阅批量事件
+     * @param batchClass 批量事件类（如BlockPlaceBatch.class）
+     * @param listener 批量监听器（一次接收整个批次）
+     */
+    <B extends EventBatch<?>> void subscribeBatch(Class<B> batchClass, BatchListener<B> listener);
+    
+    /**
+     * 取消订阅批量事件
+     */
+    <B extends EventBatch<?>> void unsubscribeBatch(Class<B> batchClass, BatchListener<B> listener);
+    
+    /**
+     * 批量发布事件
+     * 先将整个批次交给批量监听器，再将未取消的条目逐条分发给普通监听器；
+     * 没有普通监听器时不会创建任何单条事件
+     * @param batch 批量事件
+     */
+    <B extends EventBatch<?>> void postBatch(B batch);
+    
     /**
      * 事件监听器接口
      */
@@ -33,5 +81,13 @@ public interface IEventBus {
     interface EventListener<T extends GameEvent> {
         void onEvent(T event);
     }
+    
+    /**
+     * 批量事件监听器接口
+     */
+    @FunctionalInterface
+    interface BatchListener<B extends EventBatch<?>> {
+        void onBatch(B batch);
+    }
 }
 
@@ -0,0 +1,91 @@
+package com.freedomland.api.event;
+
+import com.freedomland.api.player.IPlayer;
+
+/**
+ * 玩家移动事件（对应PLAYER_MOVE Hook）
+ * 每个玩家每帧都可能触发，只能通过obtain()/recycle()从对象池获取
+ */
+public class PlayerMoveEvent extends GameEvent {
+    
+    private static final EventPool<PlayerMoveEvent> POOL = new EventPool<>(PlayerMoveEvent::new);
+    
+    private IPlayer player;
+    private float fromX, fromY, fromZ;
+    private float toX, toY, toZ;
+    
+    /**
+     * 对象池使用的构造函数
+     */
+    private PlayerMoveEvent() {
+    }
+    
+    /**
+     * 从对象池获取事件（分发结束后需调用recycle()归还）
+     */
+    public static PlayerMoveEvent obtain(IPlayer player, float fromX, float fromY, float fromZ,
+                                         float toX, float toY, float toZ) {
+        PlayerMoveEvent event = POOL.acquire();
+        event.player = player;
+        event.fromX = fromX;
+        event.fromY = fromY;
+        event.fromZ = fromZ;
+        event.toX = toX;
+        event.toY = toY;
+        event.toZ = toZ;
+        return event;
+    }
+    
+    /**
+     * 归还对象池
+     */
+    public void recycle() {
+        POOL.release(this);
+    }
+    
+    @Override
+    protected void reset() {
+        super.reset();
+        player = null;
+        fromX = fromY = fromZ = 0;
+        toX = toY = toZ = 0;
+    }
+    
+    /**
+     * 获取移动的玩家
+     */
+    public IPlayer getPlayer() {
+        checkNotRecycled();
+        return player;
+    }
+    
+    public float getFromX() {
+        checkNotRecycled();
+        return fromX;
+    }
+    
+    public float getFromY() {
+        checkNotRecycled();
+        return fromY;
+    }
+    
+    public float getFromZ() {
+        checkNotRecycled();
+        return fromZ;
+    }
+    
+    public float getToX() {
+        checkNotRecycled();
+        return toX;
+    }
+    
+    public float getToY() {
+        checkNotRecycled();
+        return toY;
+    }
+    
+    public float getToZ() {
+        checkNotRecycled();
+        return toZ;
+    }
+}
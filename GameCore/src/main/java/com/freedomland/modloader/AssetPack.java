@@ -0,0 +1,404 @@
+package com.freedomland.modloader;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+
+/**
+ * 资源包
+ * 将所有生效的资源（每个路径覆盖后胜出的那个文件）打包成一个文件，打开时整体内存映射，
+ * 读取资源只是返回映射内存的一个切片，不再逐个打开和读取小文件。
+ *
+ * 文件格式：
+ * - 头部：MAGIC、FORMAT_VERSION、索引偏移（long）
+ * - 数据区：各资源内容依次排列（按路径排序，同一目录的资源相邻）
+ * - 索引：模组ID表，以及每个资源的路径、所属模组、偏移、长度、源文件修改时间
+ *
+ * 资源包不保证与磁盘一致，以下情况返回null，由调用方回退到读取源文件：
+ * - 资源当前的所属模组与打包时不同（覆盖关系变化）
+ * - 首次读取某个资源时检查源文件的大小和修改时间（压缩包模组检查压缩包的修改时间），不一致即作废该条目
+ * - 被invalidate作废（文件监视器报告变化、模组重载）
+ *
+ * 资源包文件按代编号（packFile.1、packFile.2……），每次打包写入新的一代，打开时使用编号最大的一代。
+ * 映射在GC前一直有效，Windows上被映射的文件无法替换或删除，因此从不覆盖已有的资源包；
+ * 旧的代在之后打包时删除，仍被映射而删除失败的留到下一次。
+ */
+public class AssetPack {
+    
+    private static final int MAGIC = 0x464C4150; // "FLAP"
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final long MAX_DATA_SIZE = 1536L << 20; // 单个映射区不超过2GB，留出索引的空间；超出的资源不打包
+    
+    private final MappedByteBuffer data;
+    private final ResourceIndex index; // 资源路径 -> 条目下标（保存在节点的所属模组字段中）
+    private final String[] modIds;
+    private final int[] offsets;
+    private final int[] lengths;
+    private final int[] owners; // 条目 -> modIds中的下标
+    private final long[] modified;
+    private final BitSet verified = new BitSet(); // 已检查过源文件的条目
+    private final BitSet invalid = new BitSet(); // 已作废的条目
+    
+    private AssetPack(MappedByteBuffer data, ResourceIndex index, String[] modIds,
+                      int[] offsets, int[] lengths, int[] owners, long[] modified) {
+        this.data = data;
+        this.index = index;
+        this.modIds = modIds;
+        this.offsets = offsets;
+        this.lengths = lengths;
+        this.owners = owners;
+        this.modified = modified;
+    }
+    
+    /**
+     * 将资源注入器中所有生效的资源打包（写入新的一代）
+     * @param packFile 资源包文件（不含代编号）
+     * @param resources 资源注入器
+     * @return 打包结果，写入失败返回null
+     */
+    public static BuildResult build(Path packFile, ResourceInjector resources) {
+        long start = System.nanoTime();
+        SortedMap<String, ModConfig> entries = new TreeMap<>();
+        resources.forEachResource("", entries::put);
+        
+        List<String> modIds = new ArrayList<>();
+        Map<String, Integer> modIndex = new HashMap<>();
+        Map<String, ModArchive> archives = new HashMap<>();
+        Path target = generationFile(packFile, Math.max(latestGeneration(packFile), 0) + 1);
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        int packed = 0;
+        int skipped = 0;
+        long dataBytes = 0;
+        try {
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                ByteArrayOutputStream indexBytes = new ByteArrayOutputStream();
+                DataOutputStream indexOut = new DataOutputStream(indexBytes);
+                long position = HEADER_SIZE;
+                channel.position(position);
+                
+                for (Map.Entry<String, ModConfig> entry : entries.entrySet()) {
+                    String path = entry.getKey();
+                    ModConfig owner = entry.getValue();
+                    byte[] content;
+                    long sourceModified;
+                    if (owner.isArchive()) {
+                        ModArchive archive = archives.get(owner.getModId());
+                        if (archive == null) {
+                            archive = new ModArchive(owner.getModSource());
+                            archives.put(owner.getModId(), archive);
+                        }
+                        content = archive.read(path);
+                        sourceModified = owner.getModSource().lastModified();
+                    } else {
+                        File file = new File(owner.getModSource(), path);
+                        content = readFile(file);
+                        sourceModified = file.lastModified();
+                    }
+                    if (content == null || position + content.length > MAX_DATA_SIZE) {
+                        skipped++;
+                        continue;
+                    }
+                    
+                    ByteBuffer buffer = ByteBuffer.wrap(content);
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                    Integer mod = modIndex.get(owner.getModId());
+                    if (mod == null) {
+                        mod = modIds.size();
+                        modIndex.put(owner.getModId(), mod);
+                        modIds.add(owner.getModId());
+                    }
+                    ModScanCache.writeString(indexOut, path);
+                    indexOut.writeInt(mod);
+                    indexOut.writeInt((int) position);
+                    indexOut.writeInt(content.length);
+                    indexOut.writeLong(sourceModified);
+                    position += content.length;
+                    dataBytes += content.length;
+                    packed++;
+                }
+                
+                // 索引写在数据区之后，头部最后回填索引偏移
+                long indexOffset = position;
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+                ModScanCache.writeStringArray(out, modIds.toArray(new String[0]));
+                out.writeInt(packed);
+                indexOut.flush();
+                indexBytes.writeTo(out);
+                out.flush();
+                
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.putInt(MAGIC).putInt(FORMAT_VERSION).putLong(indexOffset).flip();
+                channel.write(header, 0);
+            } finally {
+                for (ModArchive archive : archives.values()) {
+                    archive.close();
+                }
+            }
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("写入资源包失败: " + e.getMessage());
+            try {
+                Files.deleteIfExists(tmp);
+            } catch (IOException ignored) {
+                // 下次打包时覆盖
+            }
+            return null;
+        }
+        deleteOlderGenerations(packFile, target);
+        return new BuildResult(packed, skipped, dataBytes, System.nanoTime() - start);
+    }
+    
+    /**
+     * 打开最新一代的资源包（整体内存映射，映射建立后不再占用文件句柄）
+     * @param packFile 资源包文件（不含代编号）
+     * @return 资源包，不存在或格式不匹配返回null
+     */
+    public static AssetPack open(Path packFile) {
+        long generation = latestGeneration(packFile);
+        if (generation < 0) {
+            return null;
+        }
+        Path file = generationFile(packFile, generation);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                System.out.println("资源包超过2GB，忽略: " + file);
+                return null;
+            }
+            MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (data.getInt(0) != MAGIC || data.getInt(4) != FORMAT_VERSION) {
+                System.out.println("资源包格式不匹配，忽略: " + file);
+                return null;
+            }
+            ByteBuffer indexBuffer = data.duplicate();
+            indexBuffer.position((int) data.getLong(8));
+            DataInputStream in = new DataInputStream(new LoadPlan.BufferInputStream(indexBuffer));
+            
+            String[] modIds = ModScanCache.readStringArray(in);
+            int count = in.readInt();
+            ResourceIndex index = new ResourceIndex();
+            int[] offsets = new int[count];
+            int[] lengths = new int[count];
+            int[] owners = new int[count];
+            long[] modified = new long[count];
+            for (int i = 0; i < count; i++) {
+                index.setOwner(index.findOrCreate(ModScanCache.readString(in)), i);
+                owners[i] = in.readInt();
+                offsets[i] = in.readInt();
+                lengths[i] = in.readInt();
+                modified[i] = in.readLong();
+            }
+            return new AssetPack(data, index, modIds, offsets, lengths, owners, modified);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("读取资源包失败: " + e.getMessage());
+            return null;
+        }
+    }
+    
+    /**
+     * 获取资源内容（映射内存的只读切片，不复制）
+     * @param resourcePath 资源路径
+     * @param owner 资源当前的所属模组
+     * @return 资源内容，资源不在包中或条目已失效返回null
+     */
+    public ByteBuffer get(String resourcePath, ModConfig owner) {
+        int node = index.find(resourcePath);
+        int entry = node != ResourceIndex.NONE ? index.getOwner(node) : ResourceIndex.NONE;
+        if (entry == ResourceIndex.NONE) {
+            return null;
+        }
+        synchronized (this) {
+            if (invalid.get(entry)) {
+                return null;
+            }
+            if (!verified.get(entry)) {
+                if (!modIds[owners[entry]].equals(owner.getModId()) || !matchesSource(entry, resourcePath, owner)) {
+                    invalid.set(entry);
+                    return null;
+                }
+                verified.set(entry);
+            }
+        }
+        ByteBuffer slice = data.duplicate();
+        slice.position(offsets[entry]).limit(offsets[entry] + lengths[entry]);
+        return slice.slice();
+    }
+    
+    /**
+     * 检查源文件是否与打包时一致
+     */
+    private boolean matchesSource(int entry, String resourcePath, ModConfig owner) {
+        File source = owner.getModSource();
+        if (source == null) {
+            return false;
+        }
+        if (owner.isArchive()) {
+            return source.lastModified() == modified[entry];
+        }
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(new File(source, resourcePath).toPath(), BasicFileAttributes.class);
+            return attrs.size() == lengths[entry] && attrs.lastModifiedTime().toMillis() == modified[entry];
+        } catch (IOException e) {
+            return false;
+        }
+    }
+    
+    /**
+     * 作废单个资源（文件内容变化后调用）
+     */
+    public void invalidate(String resourcePath) {
+        int node = index.find(resourcePath);
+        int entry = node != ResourceIndex.NONE ? index.getOwner(node) : ResourceIndex.NONE;
+        if (entry != ResourceIndex.NONE) {
+            synchronized (this) {
+                invalid.set(entry);
+            }
+        }
+    }
+    
+    /**
+     * 作废某个模组打包的所有资源（模组重载时调用）
+     */
+    public synchronized void invalidateMod(String modId) {
+        for (int i = 0; i < owners.length; i++) {
+            if (modIds[owners[i]].equals(modId)) {
+                invalid.set(i);
+            }
+        }
+    }
+    
+    /**
+     * 包中的资源数
+     */
+    public int size() {
+        return offsets.length;
+    }
+    
+    private static Path generationFile(Path packFile, long generation) {
+        return packFile.resolveSibling(packFile.getFileName() + "." + generation);
+    }
+    
+    /**
+     * 已有资源包的最大代编号，没有时返回-1
+     */
+    private static long latestGeneration(Path packFile) {
+        long latest = -1;
+        for (Path file : listGenerations(packFile)) {
+            latest = Math.max(latest, generationOf(packFile, file));
+        }
+        return latest;
+    }
+    
+    /**
+     * 删除除current之外的各代资源包（仍被映射的删除失败，留到下一次）
+     */
+    private static void deleteOlderGenerations(Path packFile, Path current) {
+        for (Path file : listGenerations(packFile)) {
+            if (!file.equals(current)) {
+                try {
+                    Files.deleteIfExists(file);
+                } catch (IOException e) {
+                    // 仍被映射（Windows），下次打包时再删除
+                }
+            }
+        }
+    }
+    
+    private static List<Path> listGenerations(Path packFile) {
+        List<Path> result = new ArrayList<>();
+        Path dir = packFile.toAbsolutePath().getParent();
+        String prefix = packFile.getFileName() + ".";
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, prefix + "*")) {
+            for (Path file : stream) {
+                if (generationOf(packFile, file) >= 0) {
+                    result.add(file);
+                }
+            }
+        } catch (IOException | DirectoryIteratorException e) {
+            // 目录不存在或无法读取时视为没有资源包
+        }
+        return result;
+    }
+    
+    /**
+     * 文件的代编号，不是资源包文件（如.tmp）时返回-1
+     */
+    private static long generationOf(Path packFile, Path file) {
+        String suffix = file.getFileName().toString().substring(packFile.getFileName().toString().length() + 1);
+        if (suffix.isEmpty() || suffix.length() > 18) {
+            return -1;
+        }
+        for (int i = 0; i < suffix.length(); i++) {
+            char c = suffix.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+        }
+        return Long.parseLong(suffix);
+    }
+    
+    private static byte[] readFile(File file) {
+        try {
+            return Files.readAllBytes(file.toPath());
+        } catch (IOException e) {
+            System.err.println("读取资源失败 " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+    
+    /**
+     * 打包结果
+     */
+    public static class BuildResult {
+        private final int packedCount;
+        private final int skippedCount;
+        private final long dataBytes;
+        private final long buildNanos;
+        
+        public BuildResult(int packedCount, int skippedCount, long dataBytes, long buildNanos) {
+            this.packedCount = packedCount;
+            this.skippedCount = skippedCount;
+            this.dataBytes = dataBytes;
+            this.buildNanos = buildNanos;
+        }
+        
+        /**
+         * 打包的资源数
+         */
+        public int getPackedCount() {
+            return packedCount;
+        }
+        
+        /**
+         * 读取失败或超出大小上限、未打包的资源数（读取时回退到源文件）
+         */
+        public int getSkippedCount() {
+            return skippedCount;
+        }
+        
+        public long getDataBytes() {
+            return dataBytes;
+        }
+        
+        public long getBuildNanos() {
+            return buildNanos;
+        }
+        
+        @Override
+        public String toString() {
+            return String.format("资源包: 打包%d个资源(%.1fMB), 未打包%d个, 耗时%.1fms",
+                packedCount, dataBytes / 1048576.0, skippedCount, buildNanos / 1e6);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.freedomland.modloader;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * 资源目录并行遍历
+ * 每个目录是一个fork-join任务：列出目录后，每个条目的类型和修改时间通过一次readAttributes取得，
+ * 子目录再拆成子任务并行列出。资源路径由父目录的前缀直接拼接，不再逐个文件relativize。
+ * 同一目录下的条目按名称排序，遍历结果按先序合并，与线程调度无关。
+ */
+final class AssetWalker {
+    
+    private AssetWalker() {
+    }
+    
+    /**
+     * 遍历一个assets目录
+     * @param assetsDir assets目录
+     * @return 遍历结果，目录不存在时返回null
+     */
+    static Listing walk(File assetsDir) {
+        DirectoryTask root = rootTask(assetsDir);
+        if (root == null) {
+            return null;
+        }
+        ForkJoinPool.commonPool().invoke(root);
+        return root.toListing();
+    }
+    
+    /**
+     * 并行遍历多个模组的assets目录（模组之间、目录之间都并行）
+     * @param assetsDirs assets目录
+     * @return assets目录 -> 遍历结果（不存在的目录不在结果中）
+     */
+    static Map<File, Listing> walkAll(Collection<File> assetsDirs) {
+        Map<File, DirectoryTask> roots = new LinkedHashMap<>();
+        for (File assetsDir : assetsDirs) {
+            DirectoryTask root = rootTask(assetsDir);
+            if (root != null) {
+                roots.put(assetsDir, root);
+            }
+        }
+        ForkJoinPool.commonPool().invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(roots.values());
+            }
+        });
+        
+        Map<File, Listing> result = new LinkedHashMap<>();
+        for (Map.Entry<File, DirectoryTask> entry : roots.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().toListing());
+        }
+        return result;
+    }
+    
+    private static DirectoryTask rootTask(File assetsDir) {
+        Path path = assetsDir.toPath();
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+            if (!attrs.isDirectory()) {
+                return null;
+            }
+            return new DirectoryTask(path, assetsDir.getName(), "", attrs.lastModifiedTime().toMillis());
+        } catch (IOException e) {
+            return null;
+        }
+    }
+    
+    /**
+     * 列出单个目录的任务
+     */
+    private static final class DirectoryTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        
+        private final Path directory;
+        private final String rootName; // assets目录名，文件路径相对模组目录
+        private final String relativeDir; // 相对assets目录，""表示assets目录本身
+        private final long lastModified; // 由父目录读取属性时取得（列目录之前），遍历期间的变化会在下次启动时被发现
+        private final List<String> files = new ArrayList<>();
+        private final List<DirectoryTask> children = new ArrayList<>();
+        
+        DirectoryTask(Path directory, String rootName, String relativeDir, long lastModified) {
+            this.directory = directory;
+            this.rootName = rootName;
+            this.relativeDir = relativeDir;
+            this.lastModified = lastModified;
+        }
+        
+        @Override
+        protected void compute() {
+            List<Path> entries = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+                for (Path entry : stream) {
+                    entries.add(entry);
+                }
+            } catch (IOException | DirectoryIteratorException e) {
+                return; // 与File.listFiles()返回null时一致，跳过无法读取的目录
+            }
+            entries.sort(Comparator.comparing(entry -> entry.getFileName().toString()));
+            
+            String filePrefix = relativeDir.isEmpty() ? rootName + "/" : rootName + "/" + relativeDir + "/";
+            for (Path entry : entries) {
+                String name = entry.getFileName().toString();
+                BasicFileAttributes attrs;
+                try {
+                    attrs = Files.readAttributes(entry, BasicFileAttributes.class);
+                } catch (IOException e) {
+                    continue; // 遍历期间被删除或是失效的符号链接
+                }
+                if (attrs.isDirectory()) {
+                    String childDir = relativeDir.isEmpty() ? name : relativeDir + "/" + name;
+                    children.add(new DirectoryTask(entry, rootName, childDir, attrs.lastModifiedTime().toMillis()));
+                } else {
+                    files.add(filePrefix + name);
+                }
+            }
+            invokeAll(children);
+        }
+        
+        /**
+         * 按先序合并整棵子树的结果
+         */
+        Listing toListing() {
+            List<String> dirs = new ArrayList<>();
+            List<Long> dirModified = new ArrayList<>();
+            List<String> allFiles = new ArrayList<>();
+            collect(dirs, dirModified, allFiles);
+            long[] modified = new long[dirModified.size()];
+            for (int i = 0; i < modified.length; i++) {
+                modified[i] = dirModified.get(i);
+            }
+            return new Listing(dirs.toArray(new String[0]), modified, allFiles.toArray(new String[0]));
+        }
+        
+        private void collect(List<String> dirs, List<Long> dirModified, List<String> allFiles) {
+            dirs.add(relativeDir);
+            dirModified.add(lastModified);
+            allFiles.addAll(files);
+            for (DirectoryTask child : children) {
+                child.collect(dirs, dirModified, allFiles);
+            }
+        }
+    }
+    
+    /**
+     * 遍历结果（格式与ModScanCache中的资源清单一致）
+     */
+    static final class Listing {
+        final String[] dirs; // 子目录（相对assets目录，""表示assets目录本身）
+        final long[] dirModified; // 各子目录的修改时间
+        final String[] files; // 文件路径（相对模组目录）
+        
+        Listing(String[] dirs, long[] dirModified, String[] files) {
+            this.dirs = dirs;
+            this.dirModified = dirModified;
+            this.files = files;
+        }
+    }
+}
@@ -0,0 +1,415 @@
+package com.freedomland.modloader;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * 异步事件分发器
+ * 每个模组一个有界队列，同一模组的任务按提交顺序（FIFO）串行执行，
+ * 不同模组的队列在共享的后台线程池上并行执行
+ */
+public class AsyncEventDispatcher {
+    
+    private static final int DEFAULT_QUEUE_CAPACITY = 1024;
+    
+    // 单次调度最多执行的任务数，避免某个模组长期占用线程
+    private static final int DRAIN_BATCH = 64;
+    
+    /**
+     * 队列已满时的处理策略
+     */
+    public enum OverflowPolicy {
+        DROP,     // 丢弃新任务
+        BLOCK,    // 阻塞发布线程直到队列有空位（在分发线程中发布时按COALESCE处理）
+        COALESCE  // 移除同一监听器、同类型的待执行事件，新事件排到队尾；无可替换时丢弃
+    }
+    
+    private final Map<String, ModQueue> queues;
+    private volatile ExecutorService executor;
+    private volatile int queueCapacity;
+    private volatile OverflowPolicy overflowPolicy;
+    
+    /**
+     * 构造函数
+     */
+    public AsyncEventDispatcher() {
+        this.queues = new ConcurrentHashMap<>();
+        this.queueCapacity = DEFAULT_QUEUE_CAPACITY;
+        this.overflowPolicy = OverflowPolicy.DROP;
+    }
+    
+    /**
+     * 提交任务到指定模组的队列
+     * @param owner 所属模组ID
+     * @param listener 监听器（用于合并判断）
+     * @param eventClass 事件类型（用于合并判断）
+     * @param task 待执行任务
+     */
+    public void submit(String owner, Object listener, Class<?> eventClass, Runnable task) {
+        queues.computeIfAbsent(owner, ModQueue::new).offer(new Task(listener, eventClass, task));
+    }
+    
+    /**
+     * 移除满足条件的待执行任务（模组卸载时调用）
+     */
+    public void removePending(Predicate<Object> listenerFilter) {
+        for (ModQueue queue : queues.values()) {
+            queue.removeIf(task -> listenerFilter.test(task.listener));
+        }
+    }
+    
+    /**
+     * 清除所有待执行任务和统计信息
+     * 每个队列换成新队列；旧队列正在执行的任务结束前，新队列只接收任务不执行，
+     * 保证同一模组的任务不会并发执行
+     */
+    public void clear() {
+        for (Map.Entry<String, ModQueue> entry : queues.entrySet()) {
+            queues.replace(entry.getKey(), entry.getValue(), entry.getValue().retire());
+        }
+    }
+    
+    /**
+     * 设置每个模组队列的容量
+     */
+    public void setQueueCapacity(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("队列容量必须大于0: " + capacity);
+        }
+        this.queueCapacity = capacity;
+    }
+    
+    /**
+     * 设置队列已满时的处理策略
+     */
+    public void setOverflowPolicy(OverflowPolicy policy) {
+        this.overflowPolicy = Objects.requireNonNull(policy);
+    }
+    
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+    
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+    
+    /**
+     * 获取各模组队列的背压统计
+     * @return 模组ID -> 队列统计
+     */
+    public Map<String, QueueStats> getQueueStats() {
+        Map<String, QueueStats> stats = new TreeMap<>();
+        for (ModQueue queue : queues.values()) {
+            stats.put(queue.owner, queue.stats());
+        }
+        return stats;
+    }
+    
+    /**
+     * 获取（必要时创建）后台线程池
+     */
+    private ExecutorService executor() {
+        ExecutorService current = executor;
+        if (current == null) {
+            synchronized (this) {
+                current = executor;
+                if (current == null) {
+                    int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+                    ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads,
+                        30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), new DaemonThreadFactory());
+                    pool.allowCoreThreadTimeOut(true);
+                    executor = current = pool;
+                }
+            }
+        }
+        return current;
+    }
+    
+    /**
+     * 队列任务
+     */
+    private static final class Task {
+        final Object listener;
+        final Class<?> eventClass;
+        final Runnable action;
+        
+        Task(Object listener, Class<?> eventClass, Runnable action) {
+            this.listener = listener;
+            this.eventClass = eventClass;
+            this.action = action;
+        }
+    }
+    
+    /**
+     * 单个模组的有界FIFO队列，同一时刻最多一个线程在执行
+     */
+    private final class ModQueue implements Runnable {
+        final String owner;
+        final ArrayDeque<Task> pending = new ArrayDeque<>();
+        final ReentrantLock lock = new ReentrantLock();
+        final Condition notFull = lock.newCondition();
+        boolean scheduled;
+        boolean held; // 被替换的旧队列仍在执行，暂不调度
+        ModQueue successor; // 被clear替换后的新队列，之后提交的任务转交给它
+        int maxDepth;
+        
+        final LongAdder submitted = new LongAdder();
+        final LongAdder completed = new LongAdder();
+        final LongAdder dropped = new LongAdder();
+        final LongAdder coalesced = new LongAdder();
+        final LongAdder failed = new LongAdder();
+        final LongAdder blockedNanos = new LongAdder();
+        
+        ModQueue(String owner) {
+            this.owner = owner;
+        }
+        
+        void offer(Task task) {
+            ModQueue forward = null;
+            boolean schedule = false;
+            lock.lock();
+            try {
+                if (successor == null && pending.size() >= queueCapacity && !handleOverflow(task)) {
+                    return;
+                }
+                if (successor != null) {
+                    // 已被替换（可能是在阻塞等待期间）
+                    forward = successor;
+                } else {
+                    pending.addLast(task);
+                    submitted.increment();
+                    maxDepth = Math.max(maxDepth, pending.size());
+                    if (!scheduled && !held) {
+                        scheduled = true;
+                        schedule = true;
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+            if (forward != null) {
+                forward.offer(task);
+            } else if (schedule) {
+                executor().execute(this);
+            }
+        }
+        
+        /**
+         * 丢弃待执行任务并创建接替的新队列（已被替换时返回已有的新队列）
+         * 本队列仍在执行时新队列先保持暂停，由本队列的执行线程退出时放行
+         */
+        ModQueue retire() {
+            lock.lock();
+            try {
+                if (successor == null) {
+                    pending.clear();
+                    notFull.signalAll();
+                    successor = new ModQueue(owner);
+                    successor.held = scheduled || held;
+                }
+                return successor;
+            } finally {
+                lock.unlock();
+            }
+        }
+        
+        /**
+         * 前一个队列已停止执行，开始调度积压的任务
+         */
+        void release() {
+            ModQueue next = null;
+            boolean schedule = false;
+            lock.lock();
+            try {
+                held = false;
+                if (successor != null) {
+                    next = successor; // 暂停期间自己也被替换了，继续放行下一个
+                } else if (!pending.isEmpty() && !scheduled) {
+                    scheduled = true;
+                    schedule = true;
+                }
+            } finally {
+                lock.unlock();
+            }
+            if (next != null) {
+                next.release();
+            } else if (schedule) {
+                executor().execute(this);
+            }
+        }
+        
+        /**
+         * 处理队列已满（持有锁时调用）
+         * @return true=继续入队（已等到空位或已移除被合并的旧任务）；false=任务已被丢弃
+         */
+        private boolean handleOverflow(Task task) {
+            OverflowPolicy policy = overflowPolicy;
+            // 分发线程阻塞会占住线程池，所有线程互相等待时就会死锁，因此只允许非分发线程阻塞
+            if (policy == OverflowPolicy.BLOCK && Thread.currentThread() instanceof DispatcherThread) {
+                policy = OverflowPolicy.COALESCE;
+            }
+            if (policy == OverflowPolicy.BLOCK) {
+                long start = System.nanoTime();
+                try {
+                    while (pending.size() >= queueCapacity) {
+                        notFull.await();
+                    }
+                    return true;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    blockedNanos.add(System.nanoTime() - start);
+                }
+            } else if (policy == OverflowPolicy.COALESCE) {
+                Iterator<Task> it = pending.descendingIterator();
+                while (it.hasNext()) {
+                    Task queued = it.next();
+                    if (queued.listener == task.listener && queued.eventClass == task.eventClass) {
+                        // 新事件排在队尾而不是占用旧任务的位置，保证不会先于之后提交的任务执行
+                        it.remove();
+                        coalesced.increment();
+                        return true;
+                    }
+                }
+            }
+            dropped.increment();
+            return false;
+        }
+        
+        void removeIf(Predicate<Task> filter) {
+            lock.lock();
+            try {
+                if (pending.removeIf(filter)) {
+                    notFull.signalAll();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        
+        @Override
+        public void run() {
+            for (int n = 0; n < DRAIN_BATCH; n++) {
+                Task task;
+                ModQueue next = null;
+                lock.lock();
+                try {
+                    task = pending.pollFirst();
+                    if (task == null) {
+                        scheduled = false;
+                        next = successor;
+                    } else {
+                        notFull.signal();
+                    }
+                } finally {
+                    lock.unlock();
+                }
+                if (task == null) {
+                    // 已被替换时，放行接替的新队列
+                    if (next != null) {
+                        next.release();
+                    }
+                    return;
+                }
+                try {
+                    task.action.run();
+                } catch (Throwable t) {
+                    failed.increment();
+                    System.err.println("异步事件执行失败 [" + owner + "]: " + t.getMessage());
+                    t.printStackTrace();
+                }
+                completed.increment();
+            }
+            // 批次用完仍有任务，重新排队让其他模组有机会执行
+            executor().execute(this);
+        }
+        
+        QueueStats stats() {
+            int depth;
+            int max;
+            lock.lock();
+            try {
+                depth = pending.size();
+                max = maxDepth;
+            } finally {
+                lock.unlock();
+            }
+            return new QueueStats(owner, depth, max, submitted.sum(), completed.sum(),
+                dropped.sum(), coalesced.sum(), failed.sum(), blockedNanos.sum());
+        }
+    }
+    
+    /**
+     * 队列统计信息快照
+     */
+    public static class QueueStats {
+        private final String owner;
+        private final int depth;
+        private final int maxDepth;
+        private final long submitted;
+        private final long completed;
+        private final long dropped;
+        private final long coalesced;
+        private final long failed;
+        private final long blockedNanos;
+        
+        QueueStats(String owner, int depth, int maxDepth, long submitted, long completed,
+                   long dropped, long coalesced, long failed, long blockedNanos) {
+            this.owner = owner;
+            this.depth = depth;
+            this.maxDepth = maxDepth;
+            this.submitted = submitted;
+            this.completed = completed;
+            this.dropped = dropped;
+            this.coalesced = coalesced;
+            this.failed = failed;
+            this.blockedNanos = blockedNanos;
+        }
+        
+        public String getOwner() { return owner; }
+        public int getDepth() { return depth; }
+        public int getMaxDepth() { return maxDepth; }
+        public long getSubmitted() { return submitted; }
+        public long getCompleted() { return completed; }
+        public long getDropped() { return dropped; }
+        public long getCoalesced() { return coalesced; }
+        public long getFailed() { return failed; }
+        public long getBlockedNanos() { return blockedNanos; }
+        
+        @Override
+        public String toString() {
+            return owner + ": depth=" + depth + ", maxDepth=" + maxDepth + ", submitted=" + submitted +
+                ", completed=" + completed + ", dropped=" + dropped + ", coalesced=" + coalesced +
+                ", failed=" + failed + ", blockedMs=" + TimeUnit.NANOSECONDS.toMillis(blockedNanos);
+        }
+    }
+    
+    /**
+     * 分发线程（用于识别在监听器内部发布的异步事件）
+     */
+    private static final class DispatcherThread extends Thread {
+        DispatcherThread(Runnable target, String name) {
+            super(target, name);
+        }
+    }
+    
+    /**
+     * 后台守护线程工厂
+     */
+    private static final class DaemonThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+        
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new DispatcherThread(r, "FLML-AsyncEvent-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -15,16 +15,41 @@ public class DependencyResolver {
      * @throws DependencyException 依赖解析失败时抛出
      */
     public List<ModConfig> resolveDependencies(Map<String, ModConfig> modConfigs) throws DependencyException {
+        List<ModConfig> sorted = new ArrayList<>(modConfigs.size());
+        for (List<ModConfig> layer : resolveLoadLayers(modConfigs)) {
+            sorted.addAll(layer);
+        }
+        return sorted;
+    }
+    
+    /**
+     * 解析模组依赖并按层返回加载顺序
+     * 同一层内的模组互不依赖，可以同时加载；每层内按加载优先级（HIGH在前）和modId排序，结果确定。
+     * 已安装的可选依赖同样排在前面（软依赖）；未安装的可选依赖直接忽略，与强制依赖形成循环时按确定的规则断开。
+     * @param modConfigs 所有模组配置
+     * @return 加载层列表，每层的依赖都位于之前的层中
+     * @throws DependencyException 依赖缺失、版本不匹配或存在循环依赖时抛出
+     */
+    public List<List<ModConfig>> resolveLoadLayers(Map<String, ModConfig> modConfigs) throws DependencyException {
         // 检查所有依赖是否存在
         validateDependencies(modConfigs);
         
         // 构建依赖图
-        Map<String, Set<String>> dependencyGraph = buildDependencyGraph(modConfigs);
-        
-        // 拓扑排序
-        List<ModConfig> sorted = topologicalSort(modConfigs, dependencyGraph);
+        DependencyGraph graph = buildDependencyGraph(modConfigs);
         
-        return sorted;
+        // 分层拓扑排序
+        return topologicalSort(graph);
+    }
+    
+    /**
+     * 为安装了多个版本的模组选出各自的版本
+     * 优先选择较新的版本，并保证所有强制依赖的版本范围同时满足（约束传播 + 回溯搜索）
+     * @param candidates modId -> 该ID的所有候选版本
+     * @return modId -> 选中的版本
+     * @throws DependencyException 无法同时满足所有依赖时抛出
+     */
+    public Map<String, ModConfig> selectVersions(Map<String, List<ModConfig>> candidates) throws DependencyException {
+        return new VersionSelector(candidates).select();
     }
     
     /**
@@ -57,98 +82,344 @@ public class DependencyResolver {
     
     /**
      * 构建依赖图
+     * 模组按modId排序后编号，邻接关系以压缩数组（CSR）存储，避免装箱和逐节点的集合对象。
+     * 已安装且版本匹配的可选依赖作为软依赖边加入，同时也是强制依赖时按强制依赖处理。
      */
-    private Map<String, Set<String>> buildDependencyGraph(Map<String, ModConfig> modConfigs) {
-        Map<String, Set<String>> graph = new HashMap<>();
-        
-        // 初始化所有节点
-        for (String modId : modConfigs.keySet()) {
-            graph.put(modId, new HashSet<>());
+    private DependencyGraph buildDependencyGraph(Map<String, ModConfig> modConfigs) {
+        int n = modConfigs.size();
+        ModConfig[] mods = modConfigs.values().toArray(new ModConfig[0]);
+        Arrays.sort(mods, Comparator.comparing(ModConfig::getModId));
+        Map<String, Integer> index = new HashMap<>(n * 2);
+        for (int i = 0; i < n; i++) {
+            index.put(mods[i].getModId(), i);
         }
         
-        // 构建依赖关系
-        for (ModConfig mod : modConfigs.values()) {
-            List<String> required = mod.getRequiredDependencies();
-            for (String dep : required) {
+        // 每个模组的依赖（去重）
+        int[] depStart = new int[n + 1];
+        int[] depTargets = new int[16];
+        boolean[] softEdge = new boolean[16];
+        int[] seen = new int[n];
+        Arrays.fill(seen, -1);
+        int edgeCount = 0;
+        for (int i = 0; i < n; i++) {
+            depStart[i] = edgeCount;
+            for (String dep : mods[i].getRequiredDependencies()) {
+                Integer target = index.get(parseDependency(dep)[0]);
+                if (target == null || seen[target] == i) {
+                    continue;
+                }
+                seen[target] = i;
+                if (edgeCount == depTargets.length) {
+                    depTargets = Arrays.copyOf(depTargets, edgeCount * 2);
+                    softEdge = Arrays.copyOf(softEdge, edgeCount * 2);
+                }
+                depTargets[edgeCount++] = target;
+            }
+            for (String dep : mods[i].getOptionalDependencies()) {
                 String[] parts = parseDependency(dep);
-                String depModId = parts[0];
-                
-                if (modConfigs.containsKey(depModId)) {
-                    graph.get(mod.getModId()).add(depModId);
+                Integer target = index.get(parts[0]);
+                // 未安装的可选依赖不影响加载顺序
+                if (target == null || target == i || seen[target] == i) {
+                    continue;
+                }
+                if (!isOptionalVersionCompatible(mods[i], parts, mods[target])) {
+                    continue;
+                }
+                seen[target] = i;
+                if (edgeCount == depTargets.length) {
+                    depTargets = Arrays.copyOf(depTargets, edgeCount * 2);
+                    softEdge = Arrays.copyOf(softEdge, edgeCount * 2);
                 }
+                softEdge[edgeCount] = true;
+                depTargets[edgeCount++] = target;
+            }
+        }
+        depStart[n] = edgeCount;
+        
+        // 反向邻接：依赖 -> 依赖它的模组
+        int[] dependentStart = new int[n + 1];
+        for (int e = 0; e < edgeCount; e++) {
+            dependentStart[depTargets[e] + 1]++;
+        }
+        for (int i = 0; i < n; i++) {
+            dependentStart[i + 1] += dependentStart[i];
+        }
+        int[] dependents = new int[edgeCount];
+        boolean[] dependentSoft = new boolean[edgeCount];
+        int[] fill = Arrays.copyOf(dependentStart, n);
+        for (int i = 0; i < n; i++) {
+            for (int e = depStart[i]; e < depStart[i + 1]; e++) {
+                int slot = fill[depTargets[e]]++;
+                dependents[slot] = i;
+                dependentSoft[slot] = softEdge[e];
             }
         }
         
-        return graph;
+        return new DependencyGraph(mods, depStart, depTargets, softEdge, dependentStart, dependents, dependentSoft);
     }
     
     /**
-     * 拓扑排序（确定加载顺序）
+     * 检查已安装的可选依赖版本是否匹配（不匹配时只输出警告，不参与排序）
      */
-    private List<ModConfig> topologicalSort(
-        Map<String, ModConfig> modConfigs, 
-        Map<String, Set<String>> dependencyGraph
-    ) {
-        List<ModConfig> result = new ArrayList<>();
-        Map<String, Integer> inDegree = new HashMap<>();
-        Queue<String> queue = new LinkedList<>();
-        
-        // 计算入度
-        for (String modId : modConfigs.keySet()) {
-            inDegree.put(modId, 0);
+    private boolean isOptionalVersionCompatible(ModConfig mod, String[] dependency, ModConfig target) {
+        try {
+            if (VersionRange.parse(dependency[1]).matches(target.getVersion())) {
+                return true;
+            }
+        } catch (IllegalArgumentException e) {
+            // 按不匹配处理
         }
-        for (Set<String> deps : dependencyGraph.values()) {
-            for (String dep : deps) {
-                inDegree.put(dep, inDegree.get(dep) + 1);
+        System.err.println("警告: 模组 '" + mod.getModId() + "' 的可选依赖 '" + dependency[0] + ":" + dependency[1] +
+            "' 与已安装版本 '" + target.getVersion() + "' 不匹配，忽略");
+        return false;
+    }
+    
+    /**
+     * 分层拓扑排序（Kahn算法，O(V+E)，外加每层内的排序）
+     * 强制依赖和软依赖都计入入度；只剩循环时，在位于循环上、没有未满足强制依赖的模组中取排序键最小的一个，
+     * 忽略其尚未加载的软依赖（都在该循环内）后继续，同一次遍历内完成。
+     * 只是依赖了循环、自身不在循环上的模组不会被断开，仍排在循环之后。
+     */
+    private List<List<ModConfig>> topologicalSort(DependencyGraph graph) throws DependencyException {
+        int n = graph.mods.length;
+        int[] hardInDegree = new int[n];
+        int[] softInDegree = new int[n];
+        for (int i = 0; i < n; i++) {
+            for (int e = graph.depStart[i]; e < graph.depStart[i + 1]; e++) {
+                if (graph.softEdge[e]) {
+                    softInDegree[i]++;
+                } else {
+                    hardInDegree[i]++;
+                }
             }
         }
         
-        // 将入度为0的节点加入队列（按优先级排序）
-        List<String> zeroInDegree = new ArrayList<>();
-        for (Map.Entry<String, Integer> entry : inDegree.entrySet()) {
-            if (entry.getValue() == 0) {
-                zeroInDegree.add(entry.getKey());
-            }
-        }
-        // 按优先级排序
-        zeroInDegree.sort((a, b) -> {
-            ModConfig modA = modConfigs.get(a);
-            ModConfig modB = modConfigs.get(b);
-            return modB.getLoadPriority().compareTo(modA.getLoadPriority());
-        });
-        queue.addAll(zeroInDegree);
+        // 层内排序键：优先级（HIGH在前）在高位，编号（即modId顺序）在低位
+        int priorities = ModConfig.LoadPriority.values().length;
+        long[] sortKey = new long[n];
+        for (int i = 0; i < n; i++) {
+            sortKey[i] = ((long) (priorities - 1 - graph.mods[i].getLoadPriority().ordinal()) << 32) | i;
+        }
         
-        // 拓扑排序
-        while (!queue.isEmpty()) {
-            String current = queue.poll();
-            result.add(modConfigs.get(current));
+        List<List<ModConfig>> layers = new ArrayList<>();
+        boolean[] done = new boolean[n];
+        long[] current = new long[n];
+        long[] next = new long[n];
+        int currentSize = 0;
+        for (int i = 0; i < n; i++) {
+            if (hardInDegree[i] == 0 && softInDegree[i] == 0) {
+                current[currentSize++] = sortKey[i];
+            }
+        }
+        
+        int processed = 0;
+        while (processed < n) {
+            if (currentSize == 0) {
+                // 只剩循环：断开循环上一个模组的软依赖，没有可断开的则是强制依赖循环
+                boolean[] onCycle = findBreakableCycles(graph, done);
+                int best = -1;
+                for (int i = 0; i < n; i++) {
+                    if (onCycle[i] && hardInDegree[i] == 0 && (best < 0 || sortKey[i] < sortKey[best])) {
+                        best = i;
+                    }
+                }
+                if (best < 0) {
+                    throw new DependencyException("检测到循环依赖: " + findCycle(graph, done));
+                }
+                breakSoftEdges(graph, best, done);
+                softInDegree[best] = 0;
+                current[currentSize++] = sortKey[best];
+            }
             
-            for (String dep : dependencyGraph.get(current)) {
-                inDegree.put(dep, inDegree.get(dep) - 1);
-                if (inDegree.get(dep) == 0) {
-                    queue.offer(dep);
+            Arrays.sort(current, 0, currentSize);
+            List<ModConfig> layer = new ArrayList<>(currentSize);
+            for (int k = 0; k < currentSize; k++) {
+                done[(int) current[k]] = true;
+            }
+            int nextSize = 0;
+            for (int k = 0; k < currentSize; k++) {
+                int node = (int) current[k];
+                layer.add(graph.mods[node]);
+                for (int e = graph.dependentStart[node]; e < graph.dependentStart[node + 1]; e++) {
+                    int dependent = graph.dependents[e];
+                    if (done[dependent]) {
+                        continue; // 软依赖已被断开的模组
+                    }
+                    if (graph.dependentSoft[e]) {
+                        softInDegree[dependent]--;
+                    } else {
+                        hardInDegree[dependent]--;
+                    }
+                    if (hardInDegree[dependent] == 0 && softInDegree[dependent] == 0) {
+                        next[nextSize++] = sortKey[dependent];
+                    }
                 }
             }
+            processed += currentSize;
+            layers.add(layer);
+            long[] swap = current;
+            current = next;
+            next = swap;
+            currentSize = nextSize;
         }
         
-        if (result.size() != modConfigs.size()) {
-            try {
-                throw new DependencyException("检测到循环依赖");
-            } catch (DependencyException e) {
-                throw new RuntimeException(e);
+        return layers;
+    }
+    
+    /**
+     * 找出可以断开的循环：未排序模组构成的子图中，包含多个模组、且不依赖分量之外未排序模组的强连通分量
+     * （其他循环要等这些循环断开后才能继续）。强连通分量用迭代的Tarjan算法求出，O(V+E)。
+     * @return 每个模组是否位于这样的分量中
+     */
+    private boolean[] findBreakableCycles(DependencyGraph graph, boolean[] done) {
+        int n = graph.mods.length;
+        int[] order = new int[n]; // DFS访问序号，-1表示未访问
+        int[] low = new int[n];
+        int[] component = new int[n];
+        boolean[] onStack = new boolean[n];
+        int[] stack = new int[n];
+        int[] path = new int[n];
+        int[] cursor = new int[n];
+        Arrays.fill(order, -1);
+        int stackSize = 0;
+        int counter = 0;
+        int components = 0;
+        
+        for (int start = 0; start < n; start++) {
+            if (done[start] || order[start] >= 0) {
+                continue;
+            }
+            int depth = 0;
+            path[0] = start;
+            cursor[0] = graph.depStart[start];
+            order[start] = low[start] = counter++;
+            stack[stackSize++] = start;
+            onStack[start] = true;
+            while (depth >= 0) {
+                int node = path[depth];
+                if (cursor[depth] < graph.depStart[node + 1]) {
+                    int dep = graph.depTargets[cursor[depth]++];
+                    if (done[dep]) {
+                        continue;
+                    }
+                    if (order[dep] < 0) {
+                        order[dep] = low[dep] = counter++;
+                        stack[stackSize++] = dep;
+                        onStack[dep] = true;
+                        path[++depth] = dep;
+                        cursor[depth] = graph.depStart[dep];
+                    } else if (onStack[dep]) {
+                        low[node] = Math.min(low[node], order[dep]);
+                    }
+                    continue;
+                }
+                if (low[node] == order[node]) {
+                    int member;
+                    do {
+                        member = stack[--stackSize];
+                        onStack[member] = false;
+                        component[member] = components;
+                    } while (member != node);
+                    components++;
+                }
+                if (--depth >= 0) {
+                    low[path[depth]] = Math.min(low[path[depth]], low[node]);
+                }
             }
         }
         
-        // 在相同依赖级别内，按优先级排序
-        Collections.reverse(result); // 反转以获得正确的依赖顺序
+        int[] size = new int[components];
+        boolean[] blocked = new boolean[components]; // 依赖分量之外尚未排序的模组
+        for (int i = 0; i < n; i++) {
+            if (done[i]) {
+                continue;
+            }
+            size[component[i]]++;
+            for (int e = graph.depStart[i]; e < graph.depStart[i + 1]; e++) {
+                int dep = graph.depTargets[e];
+                if (!done[dep] && component[dep] != component[i]) {
+                    blocked[component[i]] = true;
+                }
+            }
+        }
+        boolean[] breakable = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            breakable[i] = !done[i] && size[component[i]] > 1 && !blocked[component[i]];
+        }
+        return breakable;
+    }
+    
+    /**
+     * 断开模组尚未加载的软依赖并输出警告
+     */
+    private void breakSoftEdges(DependencyGraph graph, int node, boolean[] done) {
+        List<String> ignored = new ArrayList<>();
+        for (int e = graph.depStart[node]; e < graph.depStart[node + 1]; e++) {
+            int dep = graph.depTargets[e];
+            if (graph.softEdge[e] && !done[dep]) {
+                ignored.add(graph.mods[dep].getModId());
+            }
+        }
+        System.err.println("警告: 模组 '" + graph.mods[node].getModId() + "' 的可选依赖 " + ignored +
+            " 存在循环依赖，这些可选依赖将在其之后加载");
+    }
+    
+    /**
+     * 在未能排序的模组中沿强制依赖找出一条具体的循环依赖路径（格式：a -> b -> c -> a，箭头表示"依赖"）
+     */
+    private String findCycle(DependencyGraph graph, boolean[] done) {
+        int n = graph.mods.length;
+        // 0=未访问，1=在当前路径上，2=已完成
+        byte[] state = new byte[n];
+        int[] path = new int[n];
+        int[] cursor = new int[n];
         
-        return result;
+        for (int start = 0; start < n; start++) {
+            if (done[start] || state[start] != 0) {
+                continue;
+            }
+            // 迭代DFS，只沿未排序的模组前进
+            int depth = 0;
+            path[0] = start;
+            cursor[0] = graph.depStart[start];
+            state[start] = 1;
+            while (depth >= 0) {
+                int node = path[depth];
+                if (cursor[depth] == graph.depStart[node + 1]) {
+                    state[node] = 2;
+                    depth--;
+                    continue;
+                }
+                int e = cursor[depth]++;
+                int dep = graph.depTargets[e];
+                if (graph.softEdge[e] || done[dep]) {
+                    continue;
+                }
+                if (state[dep] == 1) {
+                    StringBuilder sb = new StringBuilder();
+                    int from = depth;
+                    while (path[from] != dep) {
+                        from--;
+                    }
+                    for (int i = from; i <= depth; i++) {
+                        sb.append(graph.mods[path[i]].getModId()).append(" -> ");
+                    }
+                    return sb.append(graph.mods[dep].getModId()).toString();
+                }
+                if (state[dep] == 0) {
+                    state[dep] = 1;
+                    path[++depth] = dep;
+                    cursor[depth] = graph.depStart[dep];
+                }
+            }
+        }
+        return "未知";
     }
     
     /**
      * 解析依赖字符串（格式：modId:version）
      */
-    private String[] parseDependency(String dependency) {
+    static String[] parseDependency(String dependency) {
         int colonIndex = dependency.indexOf(':');
         if (colonIndex == -1) {
             return new String[]{dependency, "*"}; // 无版本要求
@@ -161,12 +432,39 @@ public class DependencyResolver {
     
     /**
      * 检查版本兼容性
+     * @param requiredVersion 版本范围（如 "*"、"1.0.0"、"^1.2"、">=1.0 <2.0"）
+     * @param actualVersion 实际版本
+     */
+    private boolean isVersionCompatible(String requiredVersion, String actualVersion) throws DependencyException {
+        try {
+            return VersionRange.parse(requiredVersion).matches(actualVersion);
+        } catch (IllegalArgumentException e) {
+            throw new DependencyException(e.getMessage());
+        }
+    }
+    
+    /**
+     * 整数编号的依赖图
      */
-    private boolean isVersionCompatible(String requiredVersion, String actualVersion) {
-        if ("*".equals(requiredVersion)) {
-            return true; // 任意版本
+    private static final class DependencyGraph {
+        final ModConfig[] mods;       // 编号 -> 模组（按modId排序）
+        final int[] depStart;         // depTargets中第i个模组的依赖起始位置
+        final int[] depTargets;       // 依赖的模组编号
+        final boolean[] softEdge;     // 与depTargets对应，是否为可选依赖（软依赖）
+        final int[] dependentStart;   // dependents中第i个模组的被依赖起始位置
+        final int[] dependents;       // 依赖该模组的模组编号
+        final boolean[] dependentSoft; // 与dependents对应，是否为可选依赖（软依赖）
+        
+        DependencyGraph(ModConfig[] mods, int[] depStart, int[] depTargets, boolean[] softEdge,
+                        int[] dependentStart, int[] dependents, boolean[] dependentSoft) {
+            this.mods = mods;
+            this.depStart = depStart;
+            this.depTargets = depTargets;
+            this.softEdge = softEdge;
+            this.dependentStart = dependentStart;
+            this.dependents = dependents;
+            this.dependentSoft = dependentSoft;
         }
-        return requiredVersion.equals(actualVersion);
     }
     
     /**
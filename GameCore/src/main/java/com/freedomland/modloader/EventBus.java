@@ -1,34 +1,172 @@
 package com.freedomland.modloader;
 
+import com.freedomland.api.event.EventBatch;
+import com.freedomland.api.event.EventPriority;
 import com.freedomland.api.event.GameEvent;
 import com.freedomland.api.event.IEventBus;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.function.Predicate;
 
 /**
  * 事件总线实现类
+ *
+ * 每个事件类型持有一个不可变的监听器数组（写时复制），
+ * 订阅/取消订阅时通过CAS重建数组（无锁，多线程并发注册不会丢失更新），
+ * 发布事件时只需一次volatile读取和一个无分配的循环。
+ *
+ * 分发支持继承层级：订阅父类事件（如GameEvent）的监听器同样会收到子类事件。
+ * 每个具体事件类的完整监听器链只解析一次并缓存在ClassValue中，
+ * 订阅变更或类加载器卸载时通过版本号失效。
+ *
+ * 监听器链按优先级预先排好序；事件被取消后直接跳到下一个仍需执行的监听器
+ * （receiveCancelled或MONITOR），不再逐个检查。
+ *
+ * postAsync将监听器交给AsyncEventDispatcher在后台线程执行，
+ * 同一模组的监听器按发布顺序执行，慢监听器不会阻塞游戏主线程。
+ * 异步发布时按发布时刻的取消状态筛选监听器，异步监听器对事件的取消和修改不会影响其他监听器。
+ *
+ * postBatch先把整个批次交给批量监听器，再把未取消的条目逐条分发给普通监听器。
+ *
+ * 开启EventMetrics后按事件类型和所属模组记录监听器耗时；普通监听器的统计项在解析分发表时绑定，
+ * 批量监听器的统计项在订阅时绑定，发布时无需查表，关闭时只多一次volatile读取。
  */
 public class EventBus implements IEventBus {
     
-    // 事件类型 -> 监听器列表
-    private Map<Class<? extends GameEvent>, List<IEventBus.EventListener<?>>> listeners;
+    private static final Registration[] NO_REGISTRATIONS = new Registration[0];
+    
+    // 已从表中摘除的监听器列表标记，向其添加的订阅者需重新获取列表
+    private static final Registration[] RETIRED = new Registration[0];
+    
+    // 非模组监听器的归属名
+    static final String GAME_OWNER = "game";
+    
+    // 事件类型 -> 监听器快照
+    private Map<Class<? extends GameEvent>, ListenerList> listeners;
+    
+    // 批量事件类型 -> 批量监听器快照
+    private final Map<Class<?>, ListenerList> batchListeners;
+    
+    // 订阅变更版本号，缓存的分发表版本不一致时重新解析
+    private final AtomicLong generation;
+    
+    // 订阅序号，同优先级监听器按订阅顺序执行
+    private final AtomicLong sequence;
+    
+    // 具体事件类 -> 已解析的监听器链（含父类监听器）
+    private final ClassValue<Dispatch> dispatchTable;
+    
+    // 已解析过的事件类，用于失效时主动清除缓存
+    private final Set<Class<?>> resolvedClasses;
+    
+    // 异步事件分发器
+    private final AsyncEventDispatcher asyncDispatcher;
+    
+    // 监听器性能统计
+    private final EventMetrics metrics;
     
     /**
      * 构造函数
      */
     public EventBus() {
         this.listeners = new ConcurrentHashMap<>();
+        this.batchListeners = new ConcurrentHashMap<>();
+        this.generation = new AtomicLong();
+        this.sequence = new AtomicLong();
+        this.resolvedClasses = ConcurrentHashMap.newKeySet();
+        this.asyncDispatcher = new AsyncEventDispatcher();
+        this.metrics = new EventMetrics();
+        this.dispatchTable = new ClassValue<Dispatch>() {
+            @Override
+            protected Dispatch computeValue(Class<?> eventClass) {
+                return resolve(eventClass);
+            }
+        };
     }
     
-    @SuppressWarnings("unchecked")
     @Override
     public <T extends GameEvent> void subscribe(Class<T> eventClass, IEventBus.EventListener<T> listener) {
-        listeners.computeIfAbsent(eventClass, k -> new ArrayList<>()).add(listener);
+        subscribe(eventClass, listener, EventPriority.NORMAL, false);
+    }
+    
+    @Override
+    public <T extends GameEvent> void subscribe(Class<T> eventClass, IEventBus.EventListener<T> listener,
+                                                EventPriority priority, boolean receiveCancelled) {
+        Registration registration = new Registration(listener, ownerOf(listener), priority,
+            receiveCancelled, sequence.incrementAndGet(), null);
+        addRegistration(listeners, eventClass, registration);
+        generation.incrementAndGet();
     }
     
     @Override
     public <T extends GameEvent> void unsubscribe(Class<T> eventClass, IEventBus.EventListener<T> listener) {
-        List<IEventBus.EventListener<?>> list = listeners.get(eventClass);
+        ListenerList list = listeners.get(eventClass);
+        if (list != null && list.remove(listener)) {
+            generation.incrementAndGet();
+        }
+    }
+    
+    @Override
+    public <T extends GameEvent> void post(T event) {
+        dispatch(dispatchFor(event.getClass()), event);
+    }
+    
+    /**
+     * 按分发表依次调用监听器
+     */
+    private <T extends GameEvent> void dispatch(Dispatch dispatch, T event) {
+        // 读取一次快照，之后的订阅变更不影响本次分发
+        Registration[] registrations = dispatch.registrations;
+        int[] nextOnCancel = dispatch.nextOnCancel;
+        boolean timed = metrics.isEnabled();
+        int i = 0;
+        while (i < registrations.length) {
+            if (event.isCancelled()) {
+                // 跳过剩余不接收已取消事件的监听器
+                i = nextOnCancel[i];
+                if (i == registrations.length) {
+                    break;
+                }
+            }
+            if (timed) {
+                invokeTimed(registrations[i], dispatch.stats[i], event);
+            } else {
+                invoke(registrations[i], event);
+            }
+            i++;
+        }
+    }
+    
+    @Override
+    public <T extends GameEvent> void postAsync(T event) {
+        Dispatch dispatch = dispatchFor(event.getClass());
+        // 取消状态在发布时确定：各模组的监听器在不同线程上并行执行，执行时读取的取消状态没有意义
+        boolean cancelled = event.isCancelled();
+        for (int i = 0; i < dispatch.registrations.length; i++) {
+            Registration registration = dispatch.registrations[i];
+            if (cancelled && !registration.receivesCancelled()) {
+                continue;
+            }
+            EventMetrics.ListenerStats stats = dispatch.stats[i];
+            asyncDispatcher.submit(registration.owner, registration.listener, event.getClass(),
+                () -> invokeAsync(registration, stats, event));
+        }
+    }
+    
+    @Override
+    public <B extends EventBatch<?>> void subscribeBatch(Class<B> batchClass, IEventBus.BatchListener<B> listener) {
+        // 批量监听器只按批次类精确匹配，统计项在订阅时即可绑定
+        String owner = ownerOf(listener);
+        Registration registration = new Registration(listener, owner, EventPriority.NORMAL,
+            false, sequence.incrementAndGet(), metrics.statsFor(batchClass, owner));
+        addRegistration(batchListeners, batchClass, registration);
+    }
+    
+    @Override
+    public <B extends EventBatch<?>> void unsubscribeBatch(Class<B> batchClass, IEventBus.BatchListener<B> listener) {
+        ListenerList list = batchListeners.get(batchClass);
         if (list != null) {
             list.remove(listener);
         }
@@ -36,35 +174,370 @@ public class EventBus implements IEventBus {
     
     @SuppressWarnings("unchecked")
     @Override
-    public <T extends GameEvent> void post(T event) {
-        Class<? extends GameEvent> eventClass = event.getClass();
-        List<IEventBus.EventListener<?>> list = listeners.get(eventClass);
-        
+    public <B extends EventBatch<?>> void postBatch(B batch) {
+        EventBatch<GameEvent> entries = (EventBatch<GameEvent>) batch;
+        // 1. 批量监听器一次接收整个批次
+        ListenerList list = batchListeners.get(batch.getClass());
         if (list != null) {
-            for (IEventBus.EventListener<?> listener : new ArrayList<>(list)) {
+            boolean timed = metrics.isEnabled();
+            for (Registration registration : list.snapshot) {
+                long start = timed ? System.nanoTime() : 0;
+                boolean failed = false;
                 try {
-                    ((IEventBus.EventListener<T>) listener).onEvent(event);
+                    ((IEventBus.BatchListener<B>) registration.listener).onBatch(batch);
                 } catch (Exception e) {
-                    System.err.println("事件监听器执行失败: " + e.getMessage());
+                    failed = true;
+                    System.err.println("批量事件监听器执行失败 [" + registration.owner + "]: " + e.getMessage());
                     e.printStackTrace();
                 }
+                if (timed) {
+                    registration.batchStats.record(System.nanoTime() - start, failed);
+                }
+            }
+        }
+        
+        // 2. 普通监听器逐条接收（没有普通监听器时不创建单条事件）
+        Dispatch dispatch = dispatchFor(entries.getEventClass());
+        if (dispatch.registrations.length == 0) {
+            return;
+        }
+        // 没有监听器接收已取消事件时，直接跳过已取消的条目
+        boolean skipCancelled = dispatch.nextOnCancel[0] == dispatch.registrations.length;
+        int size = batch.size();
+        for (int i = 0; i < size; i++) {
+            boolean cancelled = batch.isCancelled(i);
+            if (cancelled && skipCancelled) {
+                continue;
             }
+            GameEvent event = entries.toEvent(i);
+            event.setCancelled(cancelled);
+            dispatch(dispatch, event);
+            batch.setCancelled(i, event.isCancelled());
+            entries.releaseEvent(event);
         }
     }
     
+    /**
+     * 获取监听器性能统计（开启/关闭、查询、定期输出）
+     */
+    public EventMetrics getMetrics() {
+        return metrics;
+    }
+    
+    /**
+     * 获取异步事件分发器（用于配置队列容量、溢出策略及查看背压统计）
+     */
+    public AsyncEventDispatcher getAsyncDispatcher() {
+        return asyncDispatcher;
+    }
+    
     /**
      * 清除所有监听器
      */
     public void clear() {
-        listeners.clear();
+        retireIf(listeners, key -> true);
+        retireIf(batchListeners, key -> true);
+        asyncDispatcher.clear();
+        invalidateAll();
+    }
+    
+    /**
+     * 移除指定类加载器加载的所有监听器和事件类型（模组卸载时调用）
+     * @param classLoader 模组类加载器
+     */
+    public void removeListeners(ClassLoader classLoader) {
+        // 该类加载器定义的事件类型整体摘除，避免表键继续引用其类
+        retireIf(listeners, key -> key.getClassLoader() == classLoader);
+        retireIf(batchListeners, key -> key.getClassLoader() == classLoader);
+        for (ListenerList list : listeners.values()) {
+            list.removeIf(r -> r.listener.getClass().getClassLoader() == classLoader);
+        }
+        for (ListenerList list : batchListeners.values()) {
+            list.removeIf(r -> r.listener.getClass().getClassLoader() == classLoader);
+        }
+        asyncDispatcher.removePending(l -> l.getClass().getClassLoader() == classLoader);
+        metrics.removeEventClasses(classLoader);
+        invalidateAll();
     }
     
     /**
      * 获取指定事件类型的监听器数量
      */
     public int getListenerCount(Class<? extends GameEvent> eventClass) {
-        List<IEventBus.EventListener<?>> list = listeners.get(eventClass);
-        return list != null ? list.size() : 0;
+        ListenerList list = listeners.get(eventClass);
+        return list != null ? list.snapshot.length : 0;
+    }
+    
+    /**
+     * 添加注册信息；列表恰好被clear/removeListeners摘除时，帮助移除后重试
+     */
+    private static <K> void addRegistration(Map<K, ListenerList> table, K key, Registration registration) {
+        while (true) {
+            ListenerList list = table.computeIfAbsent(key, k -> new ListenerList());
+            if (list.add(registration)) {
+                return;
+            }
+            table.remove(key, list);
+        }
+    }
+    
+    /**
+     * 摘除满足条件的监听器列表：先标记为已摘除再从表中移除，
+     * 并发订阅要么在摘除前完成（随列表一起清除），要么重试到新列表上
+     */
+    private static <K extends Class<?>> void retireIf(Map<K, ListenerList> table, Predicate<K> filter) {
+        for (Map.Entry<K, ListenerList> entry : table.entrySet()) {
+            if (filter.test(entry.getKey())) {
+                entry.getValue().retire();
+                table.remove(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+    
+    /**
+     * 获取事件类的分发表（版本过期时重新解析）
+     */
+    private Dispatch dispatchFor(Class<?> eventClass) {
+        Dispatch dispatch = dispatchTable.get(eventClass);
+        if (dispatch.generation != generation.get()) {
+            dispatchTable.remove(eventClass);
+            dispatch = dispatchTable.get(eventClass);
+        }
+        return dispatch;
+    }
+    
+    /**
+     * 调用单个监听器，异常不影响其他监听器
+     */
+    @SuppressWarnings("unchecked")
+    private static <T extends GameEvent> void invoke(Registration registration, T event) {
+        try {
+            ((IEventBus.EventListener<T>) registration.listener).onEvent(event);
+        } catch (Exception e) {
+            System.err.println("事件监听器执行失败 [" + registration.owner + "]: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+    
+    /**
+     * 调用单个监听器并记录耗时
+     */
+    @SuppressWarnings("unchecked")
+    private static <T extends GameEvent> void invokeTimed(Registration registration,
+                                                          EventMetrics.ListenerStats stats, T event) {
+        long start = System.nanoTime();
+        boolean failed = false;
+        try {
+            ((IEventBus.EventListener<T>) registration.listener).onEvent(event);
+        } catch (Exception e) {
+            failed = true;
+            System.err.println("事件监听器执行失败 [" + registration.owner + "]: " + e.getMessage());
+            e.printStackTrace();
+        }
+        stats.record(System.nanoTime() - start, failed);
+    }
+    
+    /**
+     * 在后台线程调用单个监听器；异常不在此捕获，交给AsyncEventDispatcher记录并计入队列的失败数
+     */
+    @SuppressWarnings("unchecked")
+    private <T extends GameEvent> void invokeAsync(Registration registration,
+                                                   EventMetrics.ListenerStats stats, T event) {
+        if (!metrics.isEnabled()) {
+            ((IEventBus.EventListener<T>) registration.listener).onEvent(event);
+            return;
+        }
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            ((IEventBus.EventListener<T>) registration.listener).onEvent(event);
+            failed = false;
+        } finally {
+            stats.record(System.nanoTime() - start, failed);
+        }
+    }
+    
+    /**
+     * 根据监听器的类加载器确定所属模组（非模组加载的监听器归属游戏本体）
+     */
+    static String ownerOf(Object listener) {
+        ClassLoader loader = listener.getClass().getClassLoader();
+        if (loader instanceof ModClassLoader) {
+            return ((ModClassLoader) loader).getModConfig().getModId();
+        }
+        return GAME_OWNER;
+    }
+    
+    /**
+     * 解析具体事件类的完整监听器链（按优先级、订阅顺序排序）
+     */
+    private Dispatch resolve(Class<?> eventClass) {
+        // 先读版本号再读监听器，保证并发订阅时缓存不会被标记为最新
+        long gen = generation.get();
+        List<Registration> chain = new ArrayList<>();
+        for (Class<?> c = eventClass; c != null && GameEvent.class.isAssignableFrom(c); c = c.getSuperclass()) {
+            ListenerList list = listeners.get(c);
+            if (list != null) {
+                Collections.addAll(chain, list.snapshot);
+            }
+        }
+        chain.sort(Comparator.comparingInt((Registration r) -> r.priority.ordinal())
+            .thenComparingLong(r -> r.sequence));
+        
+        Registration[] registrations = chain.toArray(NO_REGISTRATIONS);
+        
+        // nextOnCancel[i]：从i开始第一个在事件取消后仍需执行的监听器下标
+        int[] nextOnCancel = new int[registrations.length];
+        int next = registrations.length;
+        for (int i = registrations.length - 1; i >= 0; i--) {
+            if (registrations[i].receivesCancelled()) {
+                next = i;
+            }
+            nextOnCancel[i] = next;
+        }
+        
+        // 绑定统计项，发布时按下标直接取用
+        EventMetrics.ListenerStats[] stats = new EventMetrics.ListenerStats[registrations.length];
+        for (int i = 0; i < registrations.length; i++) {
+            stats[i] = metrics.statsFor(eventClass, registrations[i].owner);
+        }
+        
+        resolvedClasses.add(eventClass);
+        return new Dispatch(gen, registrations, nextOnCancel, stats);
+    }
+    
+    /**
+     * 使所有已缓存的分发表失效，并释放其持有的监听器引用
+     */
+    private void invalidateAll() {
+        generation.incrementAndGet();
+        for (Iterator<Class<?>> it = resolvedClasses.iterator(); it.hasNext(); ) {
+            dispatchTable.remove(it.next());
+            it.remove();
+        }
+    }
+    
+    /**
+     * 监听器注册信息
+     */
+    private static final class Registration {
+        final Object listener; // EventListener或BatchListener
+        final String owner;
+        final EventPriority priority;
+        final boolean receiveCancelled;
+        final long sequence;
+        final EventMetrics.ListenerStats batchStats; // 批量监听器的统计项；普通监听器为null（统计项绑定在分发表中）
+        
+        Registration(Object listener, String owner, EventPriority priority,
+                     boolean receiveCancelled, long sequence, EventMetrics.ListenerStats batchStats) {
+            this.listener = listener;
+            this.owner = owner;
+            this.priority = priority;
+            this.receiveCancelled = receiveCancelled;
+            this.sequence = sequence;
+            this.batchStats = batchStats;
+        }
+        
+        boolean receivesCancelled() {
+            return receiveCancelled || priority == EventPriority.MONITOR;
+        }
+    }
+    
+    /**
+     * 已解析的分发表（不可变）
+     */
+    private static final class Dispatch {
+        final long generation;
+        final Registration[] registrations;
+        final int[] nextOnCancel;
+        final EventMetrics.ListenerStats[] stats;
+        
+        Dispatch(long generation, Registration[] registrations, int[] nextOnCancel,
+                 EventMetrics.ListenerStats[] stats) {
+            this.generation = generation;
+            this.registrations = registrations;
+            this.nextOnCancel = nextOnCancel;
+            this.stats = stats;
+        }
+    }
+    
+    /**
+     * 单个事件类型的监听器列表（写时复制，CAS无锁更新）
+     */
+    private static final class ListenerList {
+        private static final AtomicReferenceFieldUpdater<ListenerList, Registration[]> SNAPSHOT =
+            AtomicReferenceFieldUpdater.newUpdater(ListenerList.class, Registration[].class, "snapshot");
+        
+        // 不可变快照，解析分发表时直接复制
+        volatile Registration[] snapshot = NO_REGISTRATIONS;
+        
+        /**
+         * 添加注册信息
+         * @return false=列表已被摘除
+         */
+        boolean add(Registration registration) {
+            while (true) {
+                Registration[] current = snapshot;
+                if (current == RETIRED) {
+                    return false;
+                }
+                Registration[] updated = Arrays.copyOf(current, current.length + 1);
+                updated[current.length] = registration;
+                if (SNAPSHOT.compareAndSet(this, current, updated)) {
+                    return true;
+                }
+            }
+        }
+        
+        boolean remove(Object listener) {
+            while (true) {
+                Registration[] current = snapshot;
+                int index = -1;
+                for (int i = 0; i < current.length; i++) {
+                    if (current[i].listener.equals(listener)) {
+                        index = i;
+                        break;
+                    }
+                }
+                if (index < 0) {
+                    return false;
+                }
+                Registration[] updated = NO_REGISTRATIONS;
+                if (current.length > 1) {
+                    updated = new Registration[current.length - 1];
+                    System.arraycopy(current, 0, updated, 0, index);
+                    System.arraycopy(current, index + 1, updated, index, current.length - index - 1);
+                }
+                if (SNAPSHOT.compareAndSet(this, current, updated)) {
+                    return true;
+                }
+            }
+        }
+        
+        void removeIf(Predicate<Registration> filter) {
+            while (true) {
+                Registration[] current = snapshot;
+                List<Registration> kept = new ArrayList<>(current.length);
+                for (Registration registration : current) {
+                    if (!filter.test(registration)) {
+                        kept.add(registration);
+                    }
+                }
+                if (kept.size() == current.length) {
+                    return;
+                }
+                Registration[] updated = kept.isEmpty() ? NO_REGISTRATIONS : kept.toArray(NO_REGISTRATIONS);
+                if (SNAPSHOT.compareAndSet(this, current, updated)) {
+                    return;
+                }
+            }
+        }
+        
+        /**
+         * 标记为已摘除，之后的add将失败
+         */
+        void retire() {
+            SNAPSHOT.set(this, RETIRED);
+        }
     }
 }
-
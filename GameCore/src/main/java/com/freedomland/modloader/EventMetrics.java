@@ -0,0 +1,242 @@
+package com.freedomland.modloader;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 事件监听器性能统计
+ * 按"事件类型 + 所属模组"统计调用次数、累计/最大耗时和异常次数，
+ * 用于定位拖慢游戏帧的模组监听器。可在运行时开启/关闭，关闭时不产生计时开销。
+ */
+public class EventMetrics {
+    
+    // 耗时直方图桶数（按2的幂划分，第i桶为[2^(i-1), 2^i)纳秒）
+    private static final int BUCKETS = 64;
+    
+    private final Map<Key, ListenerStats> stats;
+    private volatile boolean enabled;
+    private ScheduledExecutorService dumpScheduler;
+    
+    /**
+     * 构造函数
+     */
+    public EventMetrics() {
+        this.stats = new ConcurrentHashMap<>();
+        this.enabled = false;
+    }
+    
+    /**
+     * 开启/关闭统计
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    /**
+     * 获取（必要时创建）指定事件类型和模组的统计项
+     * 在解析分发表时调用，发布事件时不再查表
+     */
+    ListenerStats statsFor(Class<?> eventClass, String owner) {
+        return stats.computeIfAbsent(new Key(eventClass, owner), k -> new ListenerStats());
+    }
+    
+    /**
+     * 移除指定类加载器加载的事件类型的统计项（模组卸载时调用）
+     */
+    void removeEventClasses(ClassLoader classLoader) {
+        stats.keySet().removeIf(key -> key.eventClass.getClassLoader() == classLoader);
+    }
+    
+    /**
+     * 清零所有统计数据
+     */
+    public void reset() {
+        for (ListenerStats s : stats.values()) {
+            s.reset();
+        }
+    }
+    
+    /**
+     * 获取当前统计快照（按累计耗时降序）
+     */
+    public List<Snapshot> getSnapshot() {
+        List<Snapshot> result = new ArrayList<>();
+        for (Map.Entry<Key, ListenerStats> entry : stats.entrySet()) {
+            ListenerStats s = entry.getValue();
+            long count = s.invocations.sum();
+            if (count == 0) {
+                continue;
+            }
+            result.add(new Snapshot(entry.getKey().eventClass.getName(), entry.getKey().owner, count,
+                s.totalNanos.sum(), s.maxNanos.get(), s.exceptions.sum(),
+                s.percentile(0.5), s.percentile(0.99)));
+        }
+        result.sort((a, b) -> Long.compare(b.totalNanos, a.totalNanos));
+        return result;
+    }
+    
+    /**
+     * 生成统计报表文本
+     */
+    public String dump() {
+        StringBuilder sb = new StringBuilder("=== 事件监听器统计 ===\n");
+        for (Snapshot s : getSnapshot()) {
+            sb.append("  ").append(s).append('\n');
+        }
+        return sb.toString();
+    }
+    
+    /**
+     * 启动定期输出统计报表
+     * @param period 输出周期
+     * @param unit 时间单位
+     */
+    public synchronized void startPeriodicDump(long period, TimeUnit unit) {
+        stopPeriodicDump();
+        dumpScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "FLML-EventMetrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        dumpScheduler.scheduleAtFixedRate(() -> System.out.print(dump()), period, period, unit);
+    }
+    
+    /**
+     * 停止定期输出
+     */
+    public synchronized void stopPeriodicDump() {
+        if (dumpScheduler != null) {
+            dumpScheduler.shutdownNow();
+            dumpScheduler = null;
+        }
+    }
+    
+    /**
+     * 统计键（事件类型 + 所属模组）
+     */
+    private static final class Key {
+        final Class<?> eventClass;
+        final String owner;
+        
+        Key(Class<?> eventClass, String owner) {
+            this.eventClass = eventClass;
+            this.owner = owner;
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return eventClass == other.eventClass && owner.equals(other.owner);
+        }
+        
+        @Override
+        public int hashCode() {
+            return eventClass.hashCode() * 31 + owner.hashCode();
+        }
+    }
+    
+    /**
+     * 单个统计项（分段计数器，多线程记录无竞争）
+     */
+    static final class ListenerStats {
+        final LongAdder invocations = new LongAdder();
+        final LongAdder totalNanos = new LongAdder();
+        final LongAdder exceptions = new LongAdder();
+        final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+        final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+        
+        void record(long nanos, boolean failed) {
+            invocations.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+            histogram.incrementAndGet(nanos <= 0 ? 0 : 64 - Long.numberOfLeadingZeros(nanos));
+            if (failed) {
+                exceptions.increment();
+            }
+        }
+        
+        /**
+         * 估算百分位耗时（返回所在桶的上界）
+         */
+        long percentile(double p) {
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                total += histogram.get(i);
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long target = (long) Math.ceil(total * p);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += histogram.get(i);
+                if (seen >= target) {
+                    return i == 0 ? 0 : (i == BUCKETS - 1 ? Long.MAX_VALUE : (1L << i) - 1);
+                }
+            }
+            return maxNanos.get();
+        }
+        
+        void reset() {
+            invocations.reset();
+            totalNanos.reset();
+            exceptions.reset();
+            maxNanos.reset();
+            for (int i = 0; i < BUCKETS; i++) {
+                histogram.set(i, 0);
+            }
+        }
+    }
+    
+    /**
+     * 统计快照
+     */
+    public static class Snapshot {
+        private final String eventClass;
+        private final String owner;
+        private final long invocations;
+        private final long totalNanos;
+        private final long maxNanos;
+        private final long exceptions;
+        private final long p50Nanos;
+        private final long p99Nanos;
+        
+        Snapshot(String eventClass, String owner, long invocations, long totalNanos, long maxNanos,
+                 long exceptions, long p50Nanos, long p99Nanos) {
+            this.eventClass = eventClass;
+            this.owner = owner;
+            this.invocations = invocations;
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+            this.exceptions = exceptions;
+            this.p50Nanos = p50Nanos;
+            this.p99Nanos = p99Nanos;
+        }
+        
+        public String getEventClass() { return eventClass; }
+        public String getOwner() { return owner; }
+        public long getInvocations() { return invocations; }
+        public long getTotalNanos() { return totalNanos; }
+        public long getMaxNanos() { return maxNanos; }
+        public long getExceptions() { return exceptions; }
+        public long getP50Nanos() { return p50Nanos; }
+        public long getP99Nanos() { return p99Nanos; }
+        
+        @Override
+        public String toString() {
+            return String.format("%s [%s] 调用=%d 累计=%.3fms 平均=%dns 最大=%dns p50<=%dns p99<=%dns 异常=%d",
+                eventClass, owner, invocations, totalNanos / 1_000_000.0, totalNanos / invocations,
+                maxNanos, p50Nanos, p99Nanos, exceptions);
+        }
+    }
+}
@@ -0,0 +1,421 @@
+package com.freedomland.modloader;
+
+import java.io.*;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * 加载计划快照
+ * 保存一次完整启动的结果：加载顺序、模组配置、类路径、已授权权限和资源映射。
+ * 下次启动时整体读入内存后解码，校验通过后可以跳过扫描、兼容性过滤、权限校验和依赖解析。
+ * 计划文件很小，不做内存映射：Windows上被映射的文件在映射释放（GC）前无法替换或删除，会导致计划无法更新。
+ *
+ * 校验内容（任一不一致即作废，回到完整流程）：
+ * - 游戏版本和权限配置指纹
+ * - mods目录下的模组目录/压缩包名称列表（新增、删除模组）
+ * - 指纹文件：mod.json（或压缩包）、类路径中的目录和JAR、共享依赖库的所有副本、assets下所有目录的大小和修改时间
+ * - mods目录下每个模组目录及其mod.json、每个压缩包，包括未被选中的（其他版本、不兼容或被拒绝的模组），
+ *   这些模组修改后可能改变版本选择和兼容性过滤的结果
+ */
+public class LoadPlan {
+    
+    private static final int MAGIC = 0x464C4C50; // "FLLP"
+    private static final int FORMAT_VERSION = 5;
+    
+    private final List<PlannedMod> mods;
+    private final List<URL> sharedLibraryUrls;
+    private final List<Integer> sharedLibraryUsers;
+    private final int[] sharedLibraryCounts;
+    private final String[] resourcePaths; // 实际文件路径不保存，恢复时由模组来源拼出
+    private final int[] resourceOwners; // 资源 -> mods中的下标
+    private final String[] shadowedPaths; // 被覆盖的资源（模组重载时回退）
+    private final int[] shadowedOwners;
+    
+    private LoadPlan(List<PlannedMod> mods, List<URL> sharedLibraryUrls, List<Integer> sharedLibraryUsers,
+                     int[] sharedLibraryCounts, String[] resourcePaths, int[] resourceOwners,
+                     String[] shadowedPaths, int[] shadowedOwners) {
+        this.mods = mods;
+        this.sharedLibraryUrls = sharedLibraryUrls;
+        this.sharedLibraryUsers = sharedLibraryUsers;
+        this.sharedLibraryCounts = sharedLibraryCounts;
+        this.resourcePaths = resourcePaths;
+        this.resourceOwners = resourceOwners;
+        this.shadowedPaths = shadowedPaths;
+        this.shadowedOwners = shadowedOwners;
+    }
+    
+    /**
+     * 读取并校验加载计划
+     * @param planFile 计划文件
+     * @param modsDir 模组目录
+     * @param gameVersion 当前游戏版本
+     * @param permissionFingerprint 当前权限配置指纹
+     * @return 校验通过的加载计划，不存在或已过期返回null
+     */
+    public static LoadPlan load(Path planFile, File modsDir, String gameVersion, long permissionFingerprint) {
+        if (!Files.isRegularFile(planFile)) {
+            return null;
+        }
+        try {
+            DataInputStream in = new DataInputStream(new BufferInputStream(ByteBuffer.wrap(Files.readAllBytes(planFile))));
+            
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                return stale("格式不匹配");
+            }
+            if (!ModScanCache.readString(in).equals(gameVersion)) {
+                return stale("游戏版本变化");
+            }
+            if (in.readLong() != permissionFingerprint) {
+                return stale("权限配置变化");
+            }
+            
+            // 先校验指纹，全部一致后才解码模组和资源
+            String[] sources = ModScanCache.readStringArray(in);
+            if (!Arrays.equals(sources, listSourceNames(modsDir))) {
+                return stale("模组列表变化");
+            }
+            int fingerprintCount = in.readInt();
+            for (int i = 0; i < fingerprintCount; i++) {
+                File file = new File(ModScanCache.readString(in));
+                long size = in.readLong();
+                long modified = in.readLong();
+                if (file.lastModified() != modified || (!file.isDirectory() && file.length() != size)) {
+                    return stale("文件变化: " + file.getPath());
+                }
+            }
+            
+            int sharedCount = in.readInt();
+            List<URL> sharedLibraryUrls = new ArrayList<>(sharedCount);
+            List<Integer> sharedLibraryUsers = new ArrayList<>(sharedCount);
+            for (int i = 0; i < sharedCount; i++) {
+                sharedLibraryUrls.add(new URL(ModScanCache.readString(in)));
+                sharedLibraryUsers.add(in.readInt());
+            }
+            int[] sharedLibraryCounts = {in.readInt(), in.readInt(), in.readInt()};
+            
+            int modCount = in.readInt();
+            List<PlannedMod> mods = new ArrayList<>(modCount);
+            for (int i = 0; i < modCount; i++) {
+                ModConfig config = ModConfig.readFrom(in);
+                String[] classpath = ModScanCache.readStringArray(in);
+                URL[] urls = new URL[classpath.length];
+                for (int j = 0; j < classpath.length; j++) {
+                    urls[j] = new URL(classpath[j]);
+                }
+                List<PermissionManager.Permission> granted = new ArrayList<>();
+                for (String name : ModScanCache.readStringArray(in)) {
+                    PermissionManager.Permission permission = PermissionManager.Permission.fromString(name);
+                    if (permission != null) {
+                        granted.add(permission);
+                    }
+                }
+                mods.add(new PlannedMod(config, urls, granted));
+            }
+            
+            int resourceCount = in.readInt();
+            String[] resourcePaths = new String[resourceCount];
+            int[] resourceOwners = new int[resourceCount];
+            for (int i = 0; i < resourceCount; i++) {
+                resourcePaths[i] = ModScanCache.readString(in);
+                resourceOwners[i] = in.readInt();
+            }
+            int shadowedCount = in.readInt();
+            String[] shadowedPaths = new String[shadowedCount];
+            int[] shadowedOwners = new int[shadowedCount];
+            for (int i = 0; i < shadowedCount; i++) {
+                shadowedPaths[i] = ModScanCache.readString(in);
+                shadowedOwners[i] = in.readInt();
+            }
+            return new LoadPlan(mods, sharedLibraryUrls, sharedLibraryUsers, sharedLibraryCounts, resourcePaths,
+                resourceOwners, shadowedPaths, shadowedOwners);
+        } catch (IOException | RuntimeException e) {
+            return stale("读取失败: " + e.getMessage());
+        }
+    }
+    
+    private static LoadPlan stale(String reason) {
+        System.out.println("加载计划已失效（" + reason + "），执行完整加载");
+        return null;
+    }
+    
+    /**
+     * 写入加载计划
+     * @param planFile 计划文件
+     * @param modsDir 模组目录
+     * @param gameVersion 游戏版本
+     * @param permissionFingerprint 权限配置指纹
+     * @param mods 按加载顺序排列的模组
+     * @param resources 资源注入器（资源映射和被覆盖的资源）
+     * @param sharedLibraries 共享依赖库（可为null）
+     */
+    public static void save(Path planFile, File modsDir, String gameVersion, long permissionFingerprint,
+                            List<PlannedMod> mods, ResourceInjector resources, SharedLibraryManager sharedLibraries) {
+        Map<String, Integer> modIndex = new HashMap<>(mods.size() * 2);
+        for (int i = 0; i < mods.size(); i++) {
+            modIndex.put(mods.get(i).getConfig().getModId(), i);
+        }
+        
+        Path tmp = planFile.resolveSibling(planFile.getFileName() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                ModScanCache.writeString(out, gameVersion);
+                out.writeLong(permissionFingerprint);
+                
+                ModScanCache.writeStringArray(out, listSourceNames(modsDir));
+                Set<File> fingerprints = new LinkedHashSet<>();
+                for (PlannedMod mod : mods) {
+                    collectFingerprints(mod, fingerprints);
+                }
+                collectSourceFingerprints(modsDir, fingerprints);
+                if (sharedLibraries != null) {
+                    // 模组类路径中已跳过的共享JAR副本也需要校验
+                    fingerprints.addAll(sharedLibraries.getSharedFiles());
+                }
+                out.writeInt(fingerprints.size());
+                for (File file : fingerprints) {
+                    ModScanCache.writeString(out, file.getPath());
+                    out.writeLong(file.isDirectory() ? 0 : file.length());
+                    out.writeLong(file.lastModified());
+                }
+                
+                List<URL> sharedUrls = sharedLibraries != null ? sharedLibraries.getSharedUrls() : Collections.emptyList();
+                out.writeInt(sharedUrls.size());
+                for (int i = 0; i < sharedUrls.size(); i++) {
+                    ModScanCache.writeString(out, sharedUrls.get(i).toString());
+                    out.writeInt(sharedLibraries.getSharedUsers().get(i));
+                }
+                SharedLibraryManager.SharedLibraryStats stats = sharedLibraries != null ? sharedLibraries.getStats() : null;
+                out.writeInt(stats != null ? stats.getJarReferences() : 0);
+                out.writeInt(stats != null ? stats.getUniqueJars() : 0);
+                out.writeInt(stats != null ? stats.getIsolatedJars() : 0);
+                
+                out.writeInt(mods.size());
+                for (PlannedMod mod : mods) {
+                    mod.getConfig().writeTo(out);
+                    String[] classpath = new String[mod.getClasspath().length];
+                    for (int i = 0; i < classpath.length; i++) {
+                        classpath[i] = mod.getClasspath()[i].toString();
+                    }
+                    ModScanCache.writeStringArray(out, classpath);
+                    String[] granted = new String[mod.getGrantedPermissions().size()];
+                    for (int i = 0; i < granted.length; i++) {
+                        granted[i] = mod.getGrantedPermissions().get(i).name();
+                    }
+                    ModScanCache.writeStringArray(out, granted);
+                }
+                
+                // 资源按路径排序写入，文件内容与注入顺序无关
+                SortedMap<String, Integer> written = new TreeMap<>();
+                resources.forEachResource("", (path, owner) -> {
+                    Integer index = modIndex.get(owner.getModId());
+                    if (index != null) {
+                        written.put(path, index);
+                    }
+                });
+                out.writeInt(written.size());
+                for (Map.Entry<String, Integer> entry : written.entrySet()) {
+                    ModScanCache.writeString(out, entry.getKey());
+                    out.writeInt(entry.getValue());
+                }
+                
+                List<String> shadowed = new ArrayList<>();
+                List<Integer> shadowedOwners = new ArrayList<>();
+                resources.forEachShadowed((path, owner) -> {
+                    Integer index = modIndex.get(owner.getModId());
+                    if (index != null) {
+                        shadowed.add(path);
+                        shadowedOwners.add(index);
+                    }
+                });
+                out.writeInt(shadowed.size());
+                for (int i = 0; i < shadowed.size(); i++) {
+                    ModScanCache.writeString(out, shadowed.get(i));
+                    out.writeInt(shadowedOwners.get(i));
+                }
+            }
+            Files.move(tmp, planFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("写入加载计划失败: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * 删除加载计划（下次启动执行完整加载）
+     */
+    public static void delete(Path planFile) {
+        try {
+            Files.deleteIfExists(planFile);
+        } catch (IOException e) {
+            System.err.println("删除加载计划失败: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * 收集模组需要校验的文件和目录
+     */
+    private static void collectFingerprints(PlannedMod mod, Set<File> fingerprints) {
+        File source = mod.getConfig().getModSource();
+        if (source != null) {
+            // 压缩包本身覆盖了其中的所有内容；目录的修改时间覆盖根目录下JAR的增删
+            fingerprints.add(source);
+            if (source.isDirectory()) {
+                fingerprints.add(new File(source, "mod.json"));
+                fingerprints.add(new File(source, "lib"));
+                File assetsDir = new File(source, "assets");
+                fingerprints.add(assetsDir);
+                collectDirectories(assetsDir, fingerprints);
+            }
+        }
+        for (URL url : mod.getClasspath()) {
+            if ("file".equals(url.getProtocol())) {
+                try {
+                    fingerprints.add(new File(url.toURI()));
+                } catch (Exception e) {
+                    // 无法转换为文件的URL不参与校验
+                }
+            }
+        }
+    }
+    
+    /**
+     * 收集mods目录下所有模组来源（无论是否被选中加载）需要校验的文件：目录及其mod.json、压缩包
+     */
+    private static void collectSourceFingerprints(File modsDir, Set<File> fingerprints) {
+        File[] sources = ModScanner.listModSources(modsDir);
+        if (sources == null) {
+            return;
+        }
+        for (File source : sources) {
+            fingerprints.add(source);
+            if (source.isDirectory()) {
+                fingerprints.add(new File(source, "mod.json"));
+            }
+        }
+    }
+    
+    private static void collectDirectories(File directory, Set<File> fingerprints) {
+        File[] children = directory.listFiles(File::isDirectory);
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            fingerprints.add(child);
+            collectDirectories(child, fingerprints);
+        }
+    }
+    
+    private static String[] listSourceNames(File modsDir) {
+        File[] sources = ModScanner.listModSources(modsDir);
+        if (sources == null) {
+            return new String[0];
+        }
+        String[] names = new String[sources.length];
+        for (int i = 0; i < sources.length; i++) {
+            names[i] = sources[i].getName();
+        }
+        Arrays.sort(names);
+        return names;
+    }
+    
+    /**
+     * 获取按加载顺序排列的模组
+     */
+    public List<PlannedMod> getMods() {
+        return mods;
+    }
+    
+    /**
+     * 获取共享依赖库的类路径（没有共享依赖库时为空）
+     */
+    public List<URL> getSharedLibraryUrls() {
+        return sharedLibraryUrls;
+    }
+    
+    /**
+     * 获取共享依赖库的使用模组数（与getSharedLibraryUrls对应）
+     */
+    public List<Integer> getSharedLibraryUsers() {
+        return sharedLibraryUsers;
+    }
+    
+    /**
+     * 获取保存计划时的共享依赖库统计：{引用数, 不同JAR数, 隔离JAR数}
+     */
+    public int[] getSharedLibraryCounts() {
+        return sharedLibraryCounts;
+    }
+    
+    /**
+     * 将保存的资源映射恢复到资源注入器
+     */
+    public void restoreResources(ResourceInjector injector) {
+        ModConfig[] owners = new ModConfig[resourcePaths.length];
+        for (int i = 0; i < owners.length; i++) {
+            owners[i] = mods.get(resourceOwners[i]).getConfig();
+        }
+        injector.restore(resourcePaths, owners);
+        
+        ModConfig[] shadowedConfigs = new ModConfig[shadowedPaths.length];
+        for (int i = 0; i < shadowedConfigs.length; i++) {
+            shadowedConfigs[i] = mods.get(shadowedOwners[i]).getConfig();
+        }
+        injector.restoreShadowed(shadowedPaths, shadowedConfigs);
+    }
+    
+    /**
+     * 计划中的单个模组
+     */
+    public static class PlannedMod {
+        private final ModConfig config;
+        private final URL[] classpath;
+        private final List<PermissionManager.Permission> grantedPermissions;
+        
+        public PlannedMod(ModConfig config, URL[] classpath, List<PermissionManager.Permission> grantedPermissions) {
+            this.config = config;
+            this.classpath = classpath;
+            this.grantedPermissions = grantedPermissions;
+        }
+        
+        public ModConfig getConfig() {
+            return config;
+        }
+        
+        public URL[] getClasspath() {
+            return classpath;
+        }
+        
+        public List<PermissionManager.Permission> getGrantedPermissions() {
+            return grantedPermissions;
+        }
+    }
+    
+    /**
+     * 直接读取映射内存的输入流
+     */
+    static final class BufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+        
+        BufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+        
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+        
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+    }
+}
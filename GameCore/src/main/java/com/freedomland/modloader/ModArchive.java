@@ -0,0 +1,144 @@
+package com.freedomland.modloader;
+
+import java.io.*;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * 压缩包模组（mods/*.jar、mods/*.zip）
+ * 直接从压缩包的中央目录读取mod.json、类文件和资源，无需解压到磁盘。
+ * 打开时一次性建立有序的条目索引，之后的前缀查询不再遍历中央目录。
+ */
+public class ModArchive implements Closeable {
+    
+    // 官方核心包（flml-core-*.jar）不是模组
+    private static final String CORE_PREFIX = "flml-core-";
+    
+    private final File file;
+    private final ZipFile zipFile;
+    private final String[] entryNames; // 文件条目名（不含目录），已排序
+    
+    /**
+     * 打开压缩包并建立条目索引
+     */
+    public ModArchive(File file) throws IOException {
+        this.file = file;
+        this.zipFile = new ZipFile(file);
+        
+        List<String> names = new ArrayList<>(zipFile.size());
+        Enumeration<? extends ZipEntry> entries = zipFile.entries();
+        while (entries.hasMoreElements()) {
+            ZipEntry entry = entries.nextElement();
+            if (!entry.isDirectory()) {
+                names.add(entry.getName());
+            }
+        }
+        this.entryNames = names.toArray(new String[0]);
+        Arrays.sort(entryNames);
+    }
+    
+    /**
+     * 判断文件是否为模组压缩包
+     */
+    public static boolean isArchive(File file) {
+        if (!file.isFile()) {
+            return false;
+        }
+        String name = file.getName().toLowerCase(Locale.ROOT);
+        if (name.startsWith(CORE_PREFIX)) {
+            return false;
+        }
+        return name.endsWith(".jar") || name.endsWith(".zip");
+    }
+    
+    /**
+     * 读取条目内容
+     * @return 条目内容，不存在返回null
+     */
+    public byte[] read(String name) throws IOException {
+        ZipEntry entry = zipFile.getEntry(name);
+        if (entry == null || entry.isDirectory()) {
+            return null;
+        }
+        try (InputStream in = zipFile.getInputStream(entry)) {
+            return in.readAllBytes();
+        }
+    }
+    
+    /**
+     * 将条目解压到指定文件（目标已是最新时跳过）
+     * 仅用于无法直接从压缩包读取的内容（如内嵌的依赖JAR）
+     */
+    public void extract(String name, File target) throws IOException {
+        ZipEntry entry = zipFile.getEntry(name);
+        if (entry == null) {
+            throw new FileNotFoundException(name);
+        }
+        if (target.isFile() && target.length() == entry.getSize() && target.lastModified() >= file.lastModified()) {
+            return;
+        }
+        File parent = target.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("无法创建目录: " + parent);
+        }
+        try (InputStream in = zipFile.getInputStream(entry);
+             OutputStream out = new FileOutputStream(target)) {
+            in.transferTo(out);
+        }
+    }
+    
+    /**
+     * 检查条目是否存在
+     */
+    public boolean contains(String name) {
+        return Arrays.binarySearch(entryNames, name) >= 0;
+    }
+    
+    /**
+     * 列出指定前缀下的所有文件条目（如 "assets/"）
+     */
+    public List<String> list(String prefix) {
+        int from = lowerBound(prefix);
+        int to = from;
+        while (to < entryNames.length && entryNames[to].startsWith(prefix)) {
+            to++;
+        }
+        return Collections.unmodifiableList(Arrays.asList(entryNames).subList(from, to));
+    }
+    
+    /**
+     * 检查指定前缀下是否存在文件条目
+     */
+    public boolean hasEntries(String prefix) {
+        int index = lowerBound(prefix);
+        return index < entryNames.length && entryNames[index].startsWith(prefix);
+    }
+    
+    /**
+     * 获取条目的jar: URL字符串（可用于URL、URLClassLoader等）
+     */
+    public String getEntryUrl(String name) {
+        return "jar:" + file.toURI() + "!/" + name;
+    }
+    
+    /**
+     * 获取压缩包文件
+     */
+    public File getFile() {
+        return file;
+    }
+    
+    /**
+     * 第一个不小于prefix的条目下标
+     */
+    private int lowerBound(String prefix) {
+        int index = Arrays.binarySearch(entryNames, prefix);
+        return index >= 0 ? index : -index - 1;
+    }
+    
+    @Override
+    public void close() throws IOException {
+        zipFile.close();
+    }
+}
@@ -2,47 +2,119 @@ package com.freedomland.modloader;
 
 import java.io.*;
 import java.net.*;
+import java.nio.file.Files;
+import java.security.CodeSigner;
+import java.security.CodeSource;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.ZipFile;
 
 /**
  * 模组类加载器
  * 负责加载模组代码
+ *
+ * 构造时为类路径上的所有目录和JAR建立"包名 -> 来源"索引，查找类时按包名一次哈希定位来源，
+ * 不再逐个URL探测；找不到的类名会被记住（有上限，依赖变化时清空），重复查找直接失败。资源查找仍由URLClassLoader负责。
+ * JAR按当前运行时版本打开，多版本JAR（Multi-Release）中META-INF/versions/下的类与URLClassLoader一样生效。
+ *
+ * 类查找顺序：父加载器 -> 本模组类路径 -> 依赖模组（必需和可选依赖，按加载顺序）的类路径。
+ * 依赖模组只提供自己类路径中的类，不再向下传递；包名 -> 依赖加载器的对应关系缓存在本加载器中。
  */
 public class ModClassLoader extends URLClassLoader {
     
+    static {
+        registerAsParallelCapable();
+    }
+    
+    // 压缩包模组内嵌依赖JAR的解压目录（位于模组目录下）
+    private static final String LIB_CACHE_DIR = ".flml-libs";
+    
+    // 记住的找不到的类名上限，超出时清空（Class.forName探测的类名可能无穷无尽）
+    private static final int MAX_MISSING_CLASSES = 4096;
+    
     private ModConfig modConfig;
-    private File modDirectory;
+    private File modDirectory; // 模组目录或模组压缩包
+    
+    // 类索引：包名（默认包为""）-> 包含该包的来源（按类路径顺序）
+    private final Map<String, ClassSource[]> packageIndex;
+    private final List<ClassSource> sources = new ArrayList<>();
+    private final Set<String> missingClasses = ConcurrentHashMap.newKeySet();
+    
+    // 依赖模组的类加载器（按加载顺序），以及包名 -> 包含该包的依赖加载器的查找缓存
+    private volatile ModClassLoader[] dependencies = new ModClassLoader[0];
+    private final Map<String, ModClassLoader[]> dependencyLookup = new ConcurrentHashMap<>();
     
     /**
      * 构造函数
      */
     public ModClassLoader(ModConfig modConfig, File modDirectory, ClassLoader parent) throws MalformedURLException {
+        this(modConfig, modDirectory, parent, null);
+    }
+    
+    /**
+     * 构造函数
+     * @param sharedLibraries 共享依赖库，其中的JAR由父加载器提供，不再加入本加载器的类路径（可为null）
+     */
+    public ModClassLoader(ModConfig modConfig, File modDirectory, ClassLoader parent,
+                          SharedLibraryManager sharedLibraries) throws MalformedURLException {
         super(new URL[0], parent);
         this.modConfig = modConfig;
         this.modDirectory = modDirectory;
         
         // 添加模组类路径
-        addModClasspath();
+        addModClasspath(sharedLibraries);
+        this.packageIndex = buildIndex();
+    }
+    
+    /**
+     * 构造函数（压缩包模组）
+     * 压缩包根目录和src/目录作为类路径，类文件直接从压缩包读取
+     */
+    public ModClassLoader(ModConfig modConfig, ModArchive archive, ClassLoader parent) throws MalformedURLException {
+        this(modConfig, archive, parent, null);
+    }
+    
+    /**
+     * 构造函数（压缩包模组）
+     * @param sharedLibraries 共享依赖库，其中的JAR由父加载器提供，不再加入本加载器的类路径（可为null）
+     */
+    public ModClassLoader(ModConfig modConfig, ModArchive archive, ClassLoader parent,
+                          SharedLibraryManager sharedLibraries) throws MalformedURLException {
+        super(new URL[0], parent);
+        this.modConfig = modConfig;
+        this.modDirectory = archive.getFile();
+        
+        addArchiveClasspath(archive, sharedLibraries);
+        this.packageIndex = buildIndex();
+    }
+    
+    /**
+     * 构造函数（使用加载计划中已解析的类路径）
+     */
+    public ModClassLoader(ModConfig modConfig, URL[] classpath, ClassLoader parent) {
+        super(classpath, parent);
+        this.modConfig = modConfig;
+        this.modDirectory = modConfig.getModSource();
+        this.packageIndex = buildIndex();
     }
     
     /**
      * 添加模组类路径
      */
-    private void addModClasspath() throws MalformedURLException {
+    private void addModClasspath(SharedLibraryManager sharedLibraries) throws MalformedURLException {
         // 添加src目录（编译后的class文件）
         File srcDir = new File(modDirectory, "src");
         if (srcDir.exists() && srcDir.isDirectory()) {
             addURL(srcDir.toURI().toURL());
         }
         
-        // 添加lib目录（依赖JAR）
-        File libDir = new File(modDirectory, "lib");
-        if (libDir.exists() && libDir.isDirectory()) {
-            File[] jars = libDir.listFiles((dir, name) -> name.endsWith(".jar"));
-            if (jars != null) {
-                for (File jar : jars) {
-                    addURL(jar.toURI().toURL());
-                }
+        // 添加lib目录（依赖JAR，共享的JAR由父加载器提供）
+        for (File jar : listLibraryJars(modDirectory)) {
+            if (sharedLibraries == null || !sharedLibraries.isShared(jar)) {
+                addURL(jar.toURI().toURL());
             }
         }
         
@@ -55,6 +127,309 @@ public class ModClassLoader extends URLClassLoader {
         }
     }
     
+    /**
+     * 添加压缩包模组的类路径
+     */
+    private void addArchiveClasspath(ModArchive archive, SharedLibraryManager sharedLibraries) throws MalformedURLException {
+        // 压缩包根目录（常规JAR布局）
+        addURL(archive.getFile().toURI().toURL());
+        
+        // 与目录模组一致的src/布局
+        if (archive.hasEntries("src/")) {
+            addURL(new URL(archive.getEntryUrl("src/")));
+        }
+        
+        // 内嵌的依赖JAR（共享的JAR由父加载器提供）
+        for (File jar : extractArchiveLibs(modConfig, archive)) {
+            if (sharedLibraries == null || !sharedLibraries.isShared(jar)) {
+                addURL(jar.toURI().toURL());
+            }
+        }
+    }
+    
+    /**
+     * 列出目录模组lib/下的依赖JAR
+     */
+    static List<File> listLibraryJars(File modDirectory) {
+        File[] jars = new File(modDirectory, "lib").listFiles((dir, name) -> name.endsWith(".jar"));
+        return jars != null ? Arrays.asList(jars) : Collections.emptyList();
+    }
+    
+    /**
+     * 解压压缩包模组内嵌的依赖JAR
+     * 内嵌JAR无法直接作为类路径，解压到模组目录下的.flml-libs/中（已是最新时跳过）
+     * @return 解压后的JAR文件
+     */
+    static List<File> extractArchiveLibs(ModConfig modConfig, ModArchive archive) {
+        List<File> jars = new ArrayList<>();
+        File libCache = new File(new File(archive.getFile().getParentFile(), LIB_CACHE_DIR), safeFileName(modConfig.getModId()));
+        String cachePrefix;
+        try {
+            cachePrefix = libCache.getCanonicalPath() + File.separator;
+        } catch (IOException e) {
+            System.err.println("  [警告] 无法确定依赖JAR解压目录，已忽略内嵌依赖 (" + modConfig.getModId() + "): " + e.getMessage());
+            return jars;
+        }
+        for (String entry : archive.list("lib/")) {
+            if (!entry.endsWith(".jar")) {
+                continue;
+            }
+            File target = new File(libCache, safeFileName(entry.substring("lib/".length())));
+            try {
+                // 条目名和modId来自压缩包，解压前确认目标仍在解压目录内
+                if (!target.getCanonicalPath().startsWith(cachePrefix)) {
+                    System.err.println("  [警告] 依赖JAR路径非法，已忽略: " + entry + " (" + modConfig.getModId() + ")");
+                    continue;
+                }
+                archive.extract(entry, target);
+                jars.add(target);
+            } catch (IOException e) {
+                System.err.println("  [警告] 解压依赖JAR失败，已忽略: " + entry +
+                    " (" + modConfig.getModId() + "): " + e.getMessage());
+            }
+        }
+        return jars;
+    }
+    
+    /**
+     * 将来自压缩包的名称转换为单层文件名：字母、数字、'.'、'-'、'_'以外的字符（包括各平台的路径分隔符）替换为'_'，
+     * 只由'.'组成的名称（"."、".."）加上前缀
+     */
+    static String safeFileName(String name) {
+        StringBuilder sb = new StringBuilder(name.length());
+        boolean onlyDots = true;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            boolean allowed = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') ||
+                c == '.' || c == '-' || c == '_';
+            sb.append(allowed ? c : '_');
+            onlyDots &= c == '.';
+        }
+        return onlyDots ? "_" + sb : sb.toString();
+    }
+    
+    /**
+     * 为类路径建立包索引
+     * 同一个JAR文件只打开一次（压缩包模组的根目录和src/共用）
+     */
+    private Map<String, ClassSource[]> buildIndex() {
+        Map<String, List<ClassSource>> index = new HashMap<>();
+        Map<File, JarFile> openJars = new HashMap<>();
+        for (URL url : getURLs()) {
+            try {
+                ClassSource source = openSource(url, openJars);
+                if (source == null) {
+                    continue;
+                }
+                sources.add(source);
+                for (String pkg : source.listPackages()) {
+                    index.computeIfAbsent(pkg, k -> new ArrayList<>(1)).add(source);
+                }
+            } catch (IOException | URISyntaxException e) {
+                System.err.println("  [警告] 无法索引类路径 " + url + " (" + modConfig.getModId() + "): " + e.getMessage());
+            }
+        }
+        
+        Map<String, ClassSource[]> result = new HashMap<>(index.size() * 2);
+        for (Map.Entry<String, List<ClassSource>> entry : index.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().toArray(new ClassSource[0]));
+        }
+        return result;
+    }
+    
+    /**
+     * 根据类路径URL创建来源（file:目录、file:JAR、jar:file:...!/前缀）
+     */
+    private static ClassSource openSource(URL url, Map<File, JarFile> openJars) throws IOException, URISyntaxException {
+        if ("file".equals(url.getProtocol())) {
+            File file = new File(url.toURI());
+            if (file.isDirectory()) {
+                return new DirectorySource(url, file);
+            }
+            if (file.isFile()) {
+                return new JarSource(url, openJar(file, openJars), "");
+            }
+            return null;
+        }
+        if ("jar".equals(url.getProtocol())) {
+            String spec = url.toString();
+            int separator = spec.indexOf("!/");
+            if (separator < 0) {
+                return null;
+            }
+            File file = new File(new URI(spec.substring("jar:".length(), separator)));
+            return new JarSource(url, openJar(file, openJars), spec.substring(separator + 2));
+        }
+        return null;
+    }
+    
+    private static JarFile openJar(File file, Map<File, JarFile> openJars) throws IOException {
+        JarFile jar = openJars.get(file);
+        if (jar == null) {
+            jar = new JarFile(file, true, ZipFile.OPEN_READ, Runtime.version());
+            openJars.put(file, jar);
+        }
+        return jar;
+    }
+    
+    /**
+     * 设置依赖模组的类加载器（按加载顺序），清空查找缓存
+     */
+    public void setDependencies(List<ModClassLoader> dependencyLoaders) {
+        this.dependencies = dependencyLoaders.toArray(new ModClassLoader[0]);
+        dependencyLookup.clear();
+        missingClasses.clear();
+    }
+    
+    /**
+     * 获取依赖模组的类加载器
+     */
+    public List<ModClassLoader> getDependencies() {
+        return Collections.unmodifiableList(Arrays.asList(dependencies));
+    }
+    
+    /**
+     * 按父加载器、本模组类路径、依赖模组的顺序查找类
+     * 已确认找不到的类直接失败；查找依赖模组时不持有本加载器的锁，依赖之间互相查找不会死锁
+     */
+    @Override
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+        if (missingClasses.contains(name)) {
+            throw new ClassNotFoundException(name);
+        }
+        Class<?> clazz;
+        synchronized (getClassLoadingLock(name)) {
+            clazz = findLoadedClass(name);
+            if (clazz == null) {
+                try {
+                    clazz = getParent().loadClass(name);
+                } catch (ClassNotFoundException e) {
+                    clazz = findOwnClass(name);
+                }
+            }
+        }
+        if (clazz == null) {
+            clazz = findDependencyClass(name);
+        }
+        if (clazz == null) {
+            if (missingClasses.size() >= MAX_MISSING_CLASSES) {
+                missingClasses.clear();
+            }
+            missingClasses.add(name);
+            throw new ClassNotFoundException(name);
+        }
+        if (resolve) {
+            resolveClass(clazz);
+        }
+        return clazz;
+    }
+    
+    /**
+     * 只在本模组类路径中查找类
+     */
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+        Class<?> clazz = findOwnClass(name);
+        if (clazz == null) {
+            throw new ClassNotFoundException(name);
+        }
+        return clazz;
+    }
+    
+    /**
+     * 按包索引在本模组类路径中查找并定义类（调用方持有该类名的加载锁）
+     * @return 找不到时返回null
+     */
+    private Class<?> findOwnClass(String name) throws ClassNotFoundException {
+        int lastDot = name.lastIndexOf('.');
+        ClassSource[] candidates = packageIndex.get(lastDot < 0 ? "" : name.substring(0, lastDot));
+        if (candidates == null) {
+            return null;
+        }
+        String path = name.replace('.', '/') + ".class";
+        for (ClassSource source : candidates) {
+            try {
+                byte[] bytes = source.read(path);
+                if (bytes != null) {
+                    definePackageIfAbsent(name, lastDot, source);
+                    return defineClass(name, bytes, 0, bytes.length, source.codeSource);
+                }
+            } catch (IOException e) {
+                throw new ClassNotFoundException(name, e);
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * 供依赖本模组的类加载器调用：只返回本模组类路径中的类
+     */
+    private Class<?> loadOwnClass(String name) throws ClassNotFoundException {
+        synchronized (getClassLoadingLock(name)) {
+            Class<?> clazz = findLoadedClass(name);
+            if (clazz != null) {
+                // 由父加载器加载的类也会被记录为已加载，这里只认本加载器定义的类
+                return clazz.getClassLoader() == this ? clazz : null;
+            }
+            return findOwnClass(name);
+        }
+    }
+    
+    /**
+     * 在依赖模组中查找类，按包名缓存哪些依赖包含该包
+     */
+    private Class<?> findDependencyClass(String name) throws ClassNotFoundException {
+        ModClassLoader[] deps = dependencies;
+        if (deps.length == 0) {
+            return null;
+        }
+        int lastDot = name.lastIndexOf('.');
+        String pkg = lastDot < 0 ? "" : name.substring(0, lastDot);
+        ModClassLoader[] owners = dependencyLookup.get(pkg);
+        if (owners == null) {
+            List<ModClassLoader> found = new ArrayList<>(1);
+            for (ModClassLoader dep : deps) {
+                if (dep.packageIndex.containsKey(pkg)) {
+                    found.add(dep);
+                }
+            }
+            owners = found.toArray(new ModClassLoader[0]);
+            dependencyLookup.put(pkg, owners);
+        }
+        for (ModClassLoader owner : owners) {
+            Class<?> clazz = owner.loadOwnClass(name);
+            if (clazz != null) {
+                return clazz;
+            }
+        }
+        return null;
+    }
+    
+    private void definePackageIfAbsent(String className, int lastDot, ClassSource source) {
+        if (lastDot < 0) {
+            return;
+        }
+        String pkg = className.substring(0, lastDot);
+        if (getDefinedPackage(pkg) != null) {
+            return;
+        }
+        Manifest manifest = null;
+        try {
+            manifest = source.getManifest();
+        } catch (IOException e) {
+            // 清单读取失败时按无清单处理
+        }
+        try {
+            if (manifest != null) {
+                definePackage(pkg, manifest, source.codeSource.getLocation());
+            } else {
+                definePackage(pkg, null, null, null, null, null, null, null);
+            }
+        } catch (IllegalArgumentException e) {
+            // 并行加载时包已被其他线程定义
+        }
+    }
+    
     /**
      * 加载模组入口类
      */
@@ -71,7 +446,7 @@ public class ModClassLoader extends URLClassLoader {
     }
     
     /**
-     * 获取模组目录
+     * 获取模组目录（压缩包模组返回压缩包文件）
      */
     public File getModDirectory() {
         return modDirectory;
@@ -83,6 +458,122 @@ public class ModClassLoader extends URLClassLoader {
     @Override
     public void close() throws IOException {
         super.close();
+        Set<JarFile> closed = new HashSet<>();
+        for (ClassSource source : sources) {
+            if (source instanceof JarSource && closed.add(((JarSource) source).jar)) {
+                ((JarSource) source).jar.close();
+            }
+        }
+    }
+    
+    /**
+     * 类路径上的一个来源（目录或JAR）
+     */
+    private abstract static class ClassSource {
+        final CodeSource codeSource;
+        
+        ClassSource(URL url) {
+            this.codeSource = new CodeSource(url, (CodeSigner[]) null);
+        }
+        
+        /**
+         * 列出来源中包含类文件的包
+         */
+        abstract Set<String> listPackages() throws IOException;
+        
+        /**
+         * 读取类文件，不存在返回null
+         */
+        abstract byte[] read(String path) throws IOException;
+        
+        Manifest getManifest() throws IOException {
+            return null;
+        }
+    }
+    
+    /**
+     * 目录来源（如src/）
+     */
+    private static final class DirectorySource extends ClassSource {
+        private final File root;
+        
+        DirectorySource(URL url, File root) {
+            super(url);
+            this.root = root;
+        }
+        
+        @Override
+        Set<String> listPackages() {
+            Set<String> packages = new HashSet<>();
+            collectPackages(root, "", packages);
+            return packages;
+        }
+        
+        private void collectPackages(File directory, String pkg, Set<String> packages) {
+            File[] children = directory.listFiles();
+            if (children == null) {
+                return;
+            }
+            for (File child : children) {
+                String name = child.getName();
+                if (child.isDirectory()) {
+                    collectPackages(child, pkg.isEmpty() ? name : pkg + "." + name, packages);
+                } else if (name.endsWith(".class")) {
+                    packages.add(pkg);
+                }
+            }
+        }
+        
+        @Override
+        byte[] read(String path) throws IOException {
+            File file = new File(root, path);
+            return file.isFile() ? Files.readAllBytes(file.toPath()) : null;
+        }
+    }
+    
+    /**
+     * JAR来源，prefix为JAR内的类路径前缀（如压缩包模组的"src/"）
+     */
+    private static final class JarSource extends ClassSource {
+        private final JarFile jar;
+        private final String prefix;
+        
+        JarSource(URL url, JarFile jar, String prefix) {
+            super(url);
+            this.jar = jar;
+            this.prefix = prefix;
+        }
+        
+        @Override
+        Set<String> listPackages() {
+            // 多版本JAR中只存在于META-INF/versions/N/下的类以去掉版本前缀后的名称列出
+            Set<String> packages = new HashSet<>();
+            jar.versionedStream().forEach(entry -> {
+                String name = entry.getName();
+                if (!name.endsWith(".class") || !name.startsWith(prefix) || name.startsWith("META-INF/")) {
+                    return;
+                }
+                int slash = name.lastIndexOf('/');
+                packages.add(slash < prefix.length() ? "" : name.substring(prefix.length(), slash).replace('/', '.'));
+            });
+            return packages;
+        }
+        
+        @Override
+        byte[] read(String path) throws IOException {
+            JarEntry entry = jar.getJarEntry(prefix + path);
+            if (entry == null) {
+                return null;
+            }
+            try (InputStream in = jar.getInputStream(entry)) {
+                return in.readAllBytes();
+            }
+        }
+        
+        @Override
+        Manifest getManifest() throws IOException {
+            return prefix.isEmpty() ? jar.getManifest() : null;
+        }
     }
 }
 
@@ -1,7 +1,20 @@
 package com.freedomland.modloader;
 
+import com.google.gson.Gson;
 import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import java.io.ByteArrayInputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -22,7 +35,11 @@ public class ModConfig {
     private Map<String, List<String>> dependencies;
     private LoadPriority loadPriority;
     private List<String> permissions;
-    private JsonObject rawJson; // 原始JSON数据
+    private boolean parallelInit; // 是否允许与其他模组并行初始化（默认允许）
+    private JsonObject rawJson; // 原始JSON数据（从缓存恢复时按需读取）
+    private File modSource; // 模组目录或模组压缩包
+    private volatile SemanticVersion semanticVersion; // 解析后的版本号（按需解析）
+    private volatile List<VersionRange> gameVersionRanges; // 解析后的兼容游戏版本范围（按需解析）
     
     /**
      * 加载优先级枚举
@@ -98,11 +115,122 @@ public class ModConfig {
             );
         }
         
+        config.parallelInit = !json.has("parallelInit") || json.get("parallelInit").getAsBoolean();
+        
         config.rawJson = json;
         
         return config;
     }
     
+    /**
+     * 以流式方式读取mod.json，只提取已知字段，其余内容直接跳过不建树
+     * 原始JSON不常驻内存，调用getRawJson时再从源文件读取
+     * 缺少必需字段时对应值为null，由调用方校验
+     */
+    public static ModConfig fromJsonReader(JsonReader reader) throws IOException {
+        ModConfig config = new ModConfig();
+        config.gameVersion = new ArrayList<>();
+        config.dependencies = new HashMap<>();
+        config.permissions = new ArrayList<>();
+        config.parallelInit = true;
+        String priorityStr = "NORMAL";
+        
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.skipValue();
+                continue;
+            }
+            switch (name) {
+                case "modId":
+                    config.modId = reader.nextString();
+                    break;
+                case "modName":
+                    config.modName = reader.nextString();
+                    break;
+                case "version":
+                    config.version = reader.nextString();
+                    break;
+                case "gameVersion":
+                    // 支持字符串或数组
+                    if (reader.peek() == JsonToken.BEGIN_ARRAY) {
+                        readStringArray(reader, config.gameVersion);
+                    } else {
+                        config.gameVersion.add(reader.nextString());
+                    }
+                    break;
+                case "author":
+                    config.author = reader.nextString();
+                    break;
+                case "description":
+                    config.description = reader.nextString();
+                    break;
+                case "entryClass":
+                    config.entryClass = reader.nextString();
+                    break;
+                case "dependencies":
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        String key = reader.nextName();
+                        if ("required".equals(key) || "optional".equals(key)) {
+                            List<String> deps = new ArrayList<>();
+                            readStringArray(reader, deps);
+                            config.dependencies.put(key, deps);
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                    break;
+                case "loadPriority":
+                    priorityStr = reader.nextString();
+                    break;
+                case "permissions":
+                    readStringArray(reader, config.permissions);
+                    break;
+                case "parallelInit":
+                    config.parallelInit = reader.nextBoolean();
+                    break;
+                default:
+                    reader.skipValue(); // 未知字段（模组自定义数据）
+                    break;
+            }
+        }
+        reader.endObject();
+        
+        if (config.modName == null) {
+            config.modName = config.modId;
+        }
+        if (config.gameVersion.isEmpty()) {
+            config.gameVersion.add("1.0.0"); // 默认版本
+        }
+        if (config.author == null) {
+            config.author = "未知";
+        }
+        if (config.description == null) {
+            config.description = "";
+        }
+        try {
+            config.loadPriority = LoadPriority.valueOf(priorityStr.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            config.loadPriority = LoadPriority.NORMAL;
+        }
+        
+        return config;
+    }
+    
+    /**
+     * 读取字符串数组
+     */
+    private static void readStringArray(JsonReader reader, List<String> target) throws IOException {
+        reader.beginArray();
+        while (reader.hasNext()) {
+            target.add(reader.nextString());
+        }
+        reader.endArray();
+    }
+    
     // Getters
     public String getModId() {
         return modId;
@@ -144,15 +272,96 @@ public class ModConfig {
         return permissions;
     }
     
-    public JsonObject getRawJson() {
+    /**
+     * 是否允许与其他模组并行初始化
+     * 入口类onInit不是线程安全的模组可在mod.json中设置 "parallelInit": false，
+     * 并行加载时该模组会独占执行
+     */
+    public boolean isParallelInit() {
+        return parallelInit;
+    }
+    
+    /**
+     * 获取原始JSON数据
+     * 流式解析和扫描缓存得到的配置不携带原始JSON，首次调用时重新读取mod.json
+     */
+    public synchronized JsonObject getRawJson() {
+        if (rawJson == null && modSource != null) {
+            try {
+                byte[] content;
+                if (isArchive()) {
+                    try (ModArchive archive = new ModArchive(modSource)) {
+                        content = archive.read("mod.json");
+                    }
+                } else {
+                    content = Files.readAllBytes(new File(modSource, "mod.json").toPath());
+                }
+                if (content != null) {
+                    try (Reader reader = new InputStreamReader(new ByteArrayInputStream(content), StandardCharsets.UTF_8)) {
+                        rawJson = new Gson().fromJson(reader, JsonObject.class);
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("读取模组配置失败 [" + modId + "]: " + e.getMessage());
+            }
+        }
         return rawJson;
     }
     
+    /**
+     * 获取模组来源（模组目录或模组压缩包）
+     */
+    public File getModSource() {
+        return modSource;
+    }
+    
+    /**
+     * 是否为压缩包模组（mods/*.jar、mods/*.zip）
+     */
+    public boolean isArchive() {
+        return modSource != null && modSource.isFile();
+    }
+    
+    void setModSource(File modSource) {
+        this.modSource = modSource;
+    }
+    
+    /**
+     * 获取解析后的语义化版本号
+     * @return 版本号，不符合语义化版本格式时返回null
+     */
+    public SemanticVersion getSemanticVersion() {
+        SemanticVersion parsed = semanticVersion;
+        if (parsed == null && version != null) {
+            parsed = SemanticVersion.tryParse(version);
+            semanticVersion = parsed;
+        }
+        return parsed;
+    }
+    
     /**
      * 检查是否兼容指定游戏版本
+     * gameVersion中的每一项都可以是版本范围（如 "^1.0"、">=1.0 <2.0"、"1.x"），满足任一项即兼容
      */
     public boolean isCompatibleWith(String gameVersion) {
-        return this.gameVersion.contains(gameVersion);
+        List<VersionRange> ranges = gameVersionRanges;
+        if (ranges == null) {
+            ranges = new ArrayList<>(this.gameVersion.size());
+            for (String range : this.gameVersion) {
+                try {
+                    ranges.add(VersionRange.parse(range));
+                } catch (IllegalArgumentException e) {
+                    System.err.println("模组 '" + modId + "' 的游戏版本范围格式错误: " + range);
+                }
+            }
+            gameVersionRanges = ranges;
+        }
+        for (VersionRange range : ranges) {
+            if (range.matches(gameVersion)) {
+                return true;
+            }
+        }
+        return false;
     }
     
     /**
@@ -165,5 +374,52 @@ public class ModConfig {
     public List<String> getOptionalDependencies() {
         return dependencies.getOrDefault("optional", new ArrayList<>());
     }
+    
+    /**
+     * 写入扫描缓存（不含原始JSON）
+     */
+    void writeTo(DataOutput out) throws IOException {
+        ModScanCache.writeString(out, modId);
+        ModScanCache.writeString(out, modName);
+        ModScanCache.writeString(out, version);
+        ModScanCache.writeStringArray(out, gameVersion.toArray(new String[0]));
+        ModScanCache.writeString(out, author);
+        ModScanCache.writeString(out, description);
+        ModScanCache.writeString(out, entryClass);
+        out.writeInt(dependencies.size());
+        for (Map.Entry<String, List<String>> entry : dependencies.entrySet()) {
+            ModScanCache.writeString(out, entry.getKey());
+            ModScanCache.writeStringArray(out, entry.getValue().toArray(new String[0]));
+        }
+        out.writeByte(loadPriority.ordinal());
+        ModScanCache.writeStringArray(out, permissions.toArray(new String[0]));
+        out.writeBoolean(parallelInit);
+        ModScanCache.writeString(out, modSource != null ? modSource.getPath() : "");
+    }
+    
+    /**
+     * 从扫描缓存读取
+     */
+    static ModConfig readFrom(DataInput in) throws IOException {
+        ModConfig config = new ModConfig();
+        config.modId = ModScanCache.readString(in);
+        config.modName = ModScanCache.readString(in);
+        config.version = ModScanCache.readString(in);
+        config.gameVersion = new ArrayList<>(Arrays.asList(ModScanCache.readStringArray(in)));
+        config.author = ModScanCache.readString(in);
+        config.description = ModScanCache.readString(in);
+        config.entryClass = ModScanCache.readString(in);
+        config.dependencies = new HashMap<>();
+        int depCount = in.readInt();
+        for (int i = 0; i < depCount; i++) {
+            String key = ModScanCache.readString(in);
+            config.dependencies.put(key, new ArrayList<>(Arrays.asList(ModScanCache.readStringArray(in))));
+        }
+        config.loadPriority = LoadPriority.values()[in.readByte()];
+        config.permissions = new ArrayList<>(Arrays.asList(ModScanCache.readStringArray(in)));
+        config.parallelInit = in.readBoolean();
+        String source = ModScanCache.readString(in);
+        config.modSource = source.isEmpty() ? null : new File(source);
+        return config;
+    }
 }
-
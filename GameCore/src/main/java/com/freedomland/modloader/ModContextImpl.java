@@ -50,5 +50,10 @@ public class ModContextImpl implements ModContext {
         
         return apiInstance;
     }
+    
+    @Override
+    public <T> void registerModAPI(Class<T> apiClass, T instance) {
+        modLoader.registerModAPI(modConfig.getModId(), apiClass, instance);
+    }
 }
 
@@ -3,9 +3,22 @@ package com.freedomland.modloader;
 import com.freedomland.api.core.IModEntry;
 import com.freedomland.api.core.IModInteractor;
 import com.freedomland.modloader.DependencyResolver.DependencyException;
+import com.freedomland.modloader.registry.Registry;
 
 import java.io.File;
+import java.lang.ref.WeakReference;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * 模组加载器核心类
@@ -14,6 +27,9 @@ import java.util.*;
 public class ModLoader {
     
     private static final String MODS_DIR = "mods";
+    private static final String SCAN_CACHE_FILE = ".flml-scan-cache";
+    private static final String LOAD_PLAN_FILE = ".flml-load-plan";
+    private static final String ASSET_PACK_FILE = ".flml-asset-pack";
     
     private ModScanner scanner;
     private DependencyResolver dependencyResolver;
@@ -21,15 +37,41 @@ public class ModLoader {
     private ResourceInjector resourceInjector;
     private EventBus eventBus;
     private ModInteractorImpl modInteractor;
+    private ModScanCache scanCache;
     
     // 已加载的模组
     private Map<String, ModConfig> loadedMods;
     private Map<String, ModClassLoader> modClassLoaders;
     private Map<String, IModEntry> modEntries;
     private Map<Class<?>, Object> apiInstances;
+    private Map<String, List<PermissionManager.Permission>> grantedPermissions;
+    private Map<String, Map<Class<?>, Object>> modAPIs; // 模组ID -> 该模组暴露的API
+    private Map<String, Integer> loadOrder; // 模组ID -> 加载顺序
+    
+    // 加载计划：启动时使用的计划条目，以及完整加载时记录的结果
+    private boolean loadPlanEnabled = true;
+    private Map<String, LoadPlan.PlannedMod> plannedMods;
+    private final Map<String, LoadPlan.PlannedMod> recordedMods = new ConcurrentHashMap<>();
+    
+    // 共享依赖库：多个模组携带的相同JAR只加载一次
+    private boolean sharedLibrariesEnabled = true;
+    private SharedLibraryManager sharedLibraries;
+    
+    // 资源包：生效的资源打包成一个文件，内存映射后读取
+    private boolean assetPackEnabled = false;
+    
+    // 交给加载器管理的注册表：重载模组时移除该模组命名空间下的条目
+    private final List<Registry<?>> registries = new CopyOnWriteArrayList<>();
     
     // 是否已初始化
     private boolean initialized;
+    private String gameVersion;
+    
+    // 是否按依赖关系并行初始化模组
+    private boolean parallelInit;
+    
+    // 并行初始化时：允许并行的模组持读锁，不允许并行的模组持写锁独占执行
+    private final ReadWriteLock initLock = new ReentrantReadWriteLock();
     
     /**
      * 构造函数
@@ -41,11 +83,17 @@ public class ModLoader {
         this.resourceInjector = new ResourceInjector();
         this.eventBus = new EventBus();
         this.modInteractor = new ModInteractorImpl();
+        this.scanCache = new ModScanCache(Paths.get(MODS_DIR, SCAN_CACHE_FILE));
+        scanner.setScanCache(scanCache);
+        resourceInjector.setScanCache(scanCache);
         
-        this.loadedMods = new HashMap<>();
-        this.modClassLoaders = new HashMap<>();
-        this.modEntries = new HashMap<>();
-        this.apiInstances = new HashMap<>();
+        this.loadedMods = new ConcurrentHashMap<>();
+        this.modClassLoaders = new ConcurrentHashMap<>();
+        this.modEntries = new ConcurrentHashMap<>();
+        this.apiInstances = new ConcurrentHashMap<>();
+        this.grantedPermissions = new ConcurrentHashMap<>();
+        this.modAPIs = new ConcurrentHashMap<>();
+        this.loadOrder = new ConcurrentHashMap<>();
         
         this.initialized = false;
         
@@ -64,10 +112,20 @@ public class ModLoader {
         
         System.out.println("=== 模组加载器初始化 ===");
         System.out.println("游戏版本: " + gameVersion);
+        this.gameVersion = gameVersion;
+        
+        // 0. 模组、游戏版本和权限配置均未变化时，按加载计划直接加载
+        if (loadPlanEnabled && loadFromPlan(gameVersion)) {
+            return;
+        }
+        
+        if (scanCache != null) {
+            scanCache.load();
+        }
         
         try {
-            // 1. 扫描模组
-            Map<String, ModConfig> allMods = scanner.scanMods();
+            // 1. 扫描模组（同一ID可能安装了多个版本）
+            Map<String, List<ModConfig>> allMods = scanner.scanModCandidates();
             if (allMods.isEmpty()) {
                 System.out.println("未发现模组");
                 initialized = true;
@@ -77,18 +135,19 @@ public class ModLoader {
             System.out.println("扫描到 " + allMods.size() + " 个模组");
             
             // 2. 过滤兼容的模组
-            Map<String, ModConfig> compatibleMods = filterCompatibleMods(allMods, gameVersion);
-            if (compatibleMods.isEmpty()) {
+            Map<String, List<ModConfig>> compatibleCandidates = filterCompatibleMods(allMods, gameVersion);
+            if (compatibleCandidates.isEmpty()) {
                 System.out.println("未发现兼容的模组");
                 initialized = true;
                 return;
             }
             
-            System.out.println("兼容模组数量: " + compatibleMods.size());
+            System.out.println("兼容模组数量: " + compatibleCandidates.size());
             
-            // 3. 解析依赖
+            // 3. 选择版本并解析依赖
             List<ModConfig> sortedMods;
             try {
+                Map<String, ModConfig> compatibleMods = dependencyResolver.selectVersions(compatibleCandidates);
                 sortedMods = dependencyResolver.resolveDependencies(compatibleMods);
             } catch (DependencyException e) {
                 System.err.println("依赖解析失败: " + e.getMessage());
@@ -98,41 +157,211 @@ public class ModLoader {
             
             System.out.println("依赖解析成功，加载顺序:");
             for (ModConfig mod : sortedMods) {
-                System.out.println("  - " + mod.getModName() + " (" + mod.getModId() + ")");
+                System.out.println("  - " + mod.getModName() + " (" + mod.getModId() + " v" + mod.getVersion() + ")");
+            }
+            
+            // 4. 找出可以共享的依赖库
+            if (sharedLibrariesEnabled) {
+                prepareSharedLibraries(sortedMods);
             }
             
-            // 4. 加载模组
+            // 5. 并行遍历各模组的资源目录，然后加载模组
+            List<File> modDirectories = new ArrayList<>(sortedMods.size());
             for (ModConfig modConfig : sortedMods) {
-                try {
-                    loadMod(modConfig);
-                } catch (Exception e) {
-                    System.err.println("加载模组失败 [" + modConfig.getModId() + "]: " + e.getMessage());
-                    e.printStackTrace();
+                if (!modConfig.isArchive()) {
+                    modDirectories.add(getModDirectory(modConfig));
                 }
             }
+            resourceInjector.prepareModResources(modDirectories);
+            setLoadOrder(sortedMods);
+            try {
+                loadMods(sortedMods);
+            } finally {
+                resourceInjector.clearPreparedResources();
+            }
             
             initialized = true;
             System.out.println("=== 模组加载完成 ===");
             System.out.println("成功加载 " + loadedMods.size() + " 个模组");
+            printSharedLibraryStats();
+            
+            // 6. 保存加载计划
+            if (loadPlanEnabled) {
+                saveLoadPlan(gameVersion, sortedMods);
+            }
+            
+            // 7. 重新打包资源（完整加载说明模组可能有变化）
+            if (assetPackEnabled) {
+                prepareAssetPack(true);
+            }
             
         } catch (Exception e) {
             System.err.println("模组加载器初始化失败: " + e.getMessage());
             e.printStackTrace();
+        } finally {
+            if (scanCache != null) {
+                scanCache.save();
+            }
         }
     }
     
     /**
-     * 过滤兼容的模组
+     * 按加载计划加载模组
+     * @return false=没有可用的加载计划，需要执行完整加载
      */
-    private Map<String, ModConfig> filterCompatibleMods(Map<String, ModConfig> allMods, String gameVersion) {
-        Map<String, ModConfig> compatible = new HashMap<>();
+    private boolean loadFromPlan(String gameVersion) {
+        Path planFile = Paths.get(MODS_DIR, LOAD_PLAN_FILE);
+        LoadPlan plan = LoadPlan.load(planFile, new File(MODS_DIR), gameVersion, permissionManager.getConfigFingerprint());
+        if (plan == null) {
+            return false;
+        }
+        if (!sharedLibrariesEnabled && !plan.getSharedLibraryUrls().isEmpty()) {
+            System.out.println("加载计划使用了共享依赖库，但共享已关闭，执行完整加载");
+            return false;
+        }
         
-        for (ModConfig mod : allMods.values()) {
-            if (mod.isCompatibleWith(gameVersion)) {
-                compatible.put(mod.getModId(), mod);
+        System.out.println("使用加载计划，跳过扫描、兼容性过滤、权限校验和依赖解析");
+        List<ModConfig> sortedMods = new ArrayList<>(plan.getMods().size());
+        plannedMods = new HashMap<>();
+        for (LoadPlan.PlannedMod planned : plan.getMods()) {
+            sortedMods.add(planned.getConfig());
+            plannedMods.put(planned.getConfig().getModId(), planned);
+        }
+        plan.restoreResources(resourceInjector);
+        if (!plan.getSharedLibraryUrls().isEmpty()) {
+            sharedLibraries = new SharedLibraryManager(Thread.currentThread().getContextClassLoader());
+            sharedLibraries.restore(plan.getSharedLibraryUrls(), plan.getSharedLibraryUsers(),
+                plan.getSharedLibraryCounts());
+        }
+        try {
+            setLoadOrder(sortedMods);
+            loadMods(sortedMods);
+        } finally {
+            plannedMods = null;
+        }
+        
+        initialized = true;
+        System.out.println("=== 模组加载完成 ===");
+        System.out.println("成功加载 " + loadedMods.size() + " 个模组");
+        printSharedLibraryStats();
+        if (assetPackEnabled) {
+            prepareAssetPack(false);
+        }
+        
+        // 有模组加载失败时作废计划，下次启动重新完整检查
+        if (loadedMods.size() != sortedMods.size()) {
+            LoadPlan.delete(planFile);
+        }
+        return true;
+    }
+    
+    /**
+     * 打开资源包并交给资源注入器
+     * @param rebuild true=重新打包；false=优先使用已有的资源包（其中内容变化的条目在读取时逐个作废）
+     */
+    private void prepareAssetPack(boolean rebuild) {
+        Path packFile = Paths.get(MODS_DIR, ASSET_PACK_FILE);
+        AssetPack pack = rebuild ? null : AssetPack.open(packFile);
+        if (pack == null) {
+            AssetPack.BuildResult result = AssetPack.build(packFile, resourceInjector);
+            if (result == null) {
+                return;
+            }
+            System.out.println(result);
+            pack = AssetPack.open(packFile);
+        }
+        resourceInjector.setAssetPack(pack);
+    }
+    
+    /**
+     * 保存加载计划（有模组加载失败时不保存，下次启动仍执行完整加载以便重新报告问题）
+     */
+    private void saveLoadPlan(String gameVersion, List<ModConfig> sortedMods) {
+        Path planFile = Paths.get(MODS_DIR, LOAD_PLAN_FILE);
+        List<LoadPlan.PlannedMod> planned = new ArrayList<>(sortedMods.size());
+        for (ModConfig modConfig : sortedMods) {
+            LoadPlan.PlannedMod recorded = recordedMods.get(modConfig.getModId());
+            if (recorded == null || !loadedMods.containsKey(modConfig.getModId())) {
+                LoadPlan.delete(planFile);
+                return;
+            }
+            planned.add(recorded);
+        }
+        LoadPlan.save(planFile, new File(MODS_DIR), gameVersion, permissionManager.getConfigFingerprint(),
+            planned, resourceInjector, sharedLibraries);
+    }
+    
+    /**
+     * 收集各模组的依赖JAR，内容相同且不与其他版本冲突的JAR交给共享加载器
+     */
+    private void prepareSharedLibraries(List<ModConfig> sortedMods) {
+        Map<String, List<File>> modLibs = new HashMap<>();
+        for (ModConfig modConfig : sortedMods) {
+            File modDirectory = getModDirectory(modConfig);
+            if (modConfig.isArchive()) {
+                try (ModArchive archive = new ModArchive(modDirectory)) {
+                    modLibs.put(modConfig.getModId(), ModClassLoader.extractArchiveLibs(modConfig, archive));
+                } catch (Exception e) {
+                    // 打开失败的模组在加载时报告
+                }
             } else {
-                System.out.println("模组不兼容: " + mod.getModId() + " (需要: " + 
-                    mod.getGameVersion() + ", 当前: " + gameVersion + ")");
+                modLibs.put(modConfig.getModId(), ModClassLoader.listLibraryJars(modDirectory));
+            }
+        }
+        sharedLibraries = new SharedLibraryManager(Thread.currentThread().getContextClassLoader());
+        sharedLibraries.prepare(modLibs);
+    }
+    
+    private void printSharedLibraryStats() {
+        if (sharedLibraries != null && !sharedLibraries.getSharedUrls().isEmpty()) {
+            System.out.println(sharedLibraries.getStats());
+        }
+    }
+    
+    /**
+     * 模组类加载器的父加载器（有共享依赖库时为共享加载器）
+     */
+    private ClassLoader getParentLoader() {
+        return sharedLibraries != null ? sharedLibraries.getLoader() : Thread.currentThread().getContextClassLoader();
+    }
+    
+    private File getModDirectory(ModConfig modConfig) {
+        return modConfig.getModSource() != null ?
+            modConfig.getModSource() : new File(MODS_DIR, modConfig.getModId());
+    }
+    
+    /**
+     * 加载排好序的模组（按设置顺序或并行）
+     */
+    private void loadMods(List<ModConfig> sortedMods) {
+        if (parallelInit && sortedMods.size() > 1) {
+            loadModsParallel(sortedMods);
+        } else {
+            for (ModConfig modConfig : sortedMods) {
+                try {
+                    loadMod(modConfig);
+                } catch (Exception e) {
+                    System.err.println("加载模组失败 [" + modConfig.getModId() + "]: " + e.getMessage());
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+    
+    /**
+     * 过滤兼容的模组（逐个版本判断，没有兼容版本的模组ID被移除）
+     */
+    private Map<String, List<ModConfig>> filterCompatibleMods(Map<String, List<ModConfig>> allMods, String gameVersion) {
+        Map<String, List<ModConfig>> compatible = new HashMap<>();
+        
+        for (List<ModConfig> versions : allMods.values()) {
+            for (ModConfig mod : versions) {
+                if (mod.isCompatibleWith(gameVersion)) {
+                    compatible.computeIfAbsent(mod.getModId(), k -> new ArrayList<>()).add(mod);
+                } else {
+                    System.out.println("模组不兼容: " + mod.getModId() + " v" + mod.getVersion() + " (需要: " + 
+                        mod.getGameVersion() + ", 当前: " + gameVersion + ")");
+                }
             }
         }
         
@@ -140,35 +369,80 @@ public class ModLoader {
     }
     
     /**
-     * 加载单个模组
+     * 按依赖关系并行加载模组
+     * 每个模组在其所有强制依赖和排在它之前的可选依赖加载结束后开始，互不依赖的模组并行加载。
+     * 与顺序加载一致，某个模组加载失败不会阻止其他模组（包括依赖它的模组）继续加载。
+     * @param sortedMods 按依赖顺序排序的模组列表
      */
-    private void loadMod(ModConfig modConfig) throws Exception {
-        System.out.println("加载模组: " + modConfig.getModName() + " (" + modConfig.getModId() + ")");
+    private void loadModsParallel(List<ModConfig> sortedMods) {
+        ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+        AtomicInteger threadCounter = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(
+            Math.min(sortedMods.size(), Runtime.getRuntime().availableProcessors()), r -> {
+                Thread thread = new Thread(r, "FLML-ModInit-" + threadCounter.incrementAndGet());
+                thread.setDaemon(true);
+                thread.setContextClassLoader(contextClassLoader);
+                return thread;
+            });
         
-        // 1. 权限校验
-        PermissionManager.PermissionCheckResult permResult = permissionManager.validatePermissions(modConfig);
-        if (!permResult.isValid()) {
-            System.err.println("模组权限校验失败 [" + modConfig.getModId() + "]:");
-            for (String error : permResult.getErrors()) {
-                System.err.println("  - " + error);
+        try {
+            // 依赖总是排在前面，创建任务时其依赖的任务已存在
+            Map<String, CompletableFuture<Void>> tasks = new HashMap<>();
+            for (ModConfig modConfig : sortedMods) {
+                List<CompletableFuture<Void>> dependencies = new ArrayList<>();
+                List<String> deps = new ArrayList<>(modConfig.getRequiredDependencies());
+                deps.addAll(modConfig.getOptionalDependencies());
+                for (String dep : deps) {
+                    // 未安装或因循环被排到后面的可选依赖不在tasks中，不需要等待
+                    CompletableFuture<Void> depTask = tasks.get(DependencyResolver.parseDependency(dep)[0]);
+                    if (depTask != null) {
+                        dependencies.add(depTask);
+                    }
+                }
+                CompletableFuture<Void> task = CompletableFuture
+                    .allOf(dependencies.toArray(new CompletableFuture<?>[0]))
+                    .thenRunAsync(() -> loadModLocked(modConfig), executor);
+                tasks.put(modConfig.getModId(), task);
             }
-            throw new Exception("权限校验失败");
+            
+            CompletableFuture.allOf(tasks.values().toArray(new CompletableFuture<?>[0])).join();
+        } finally {
+            executor.shutdown();
         }
-        
-        // 显示警告
-        for (String warning : permResult.getWarnings()) {
-            System.out.println("  [警告] " + warning);
+    }
+    
+    /**
+     * 在初始化锁保护下加载单个模组（异常在此处输出，不向后续任务传播）
+     */
+    private void loadModLocked(ModConfig modConfig) {
+        Lock lock = modConfig.isParallelInit() ? initLock.readLock() : initLock.writeLock();
+        lock.lock();
+        try {
+            loadMod(modConfig);
+        } catch (Exception e) {
+            System.err.println("加载模组失败 [" + modConfig.getModId() + "]: " + e.getMessage());
+            e.printStackTrace();
+        } finally {
+            lock.unlock();
         }
+    }
+    
+    /**
+     * 加载单个模组
+     */
+    private void loadMod(ModConfig modConfig) throws Exception {
+        System.out.println("加载模组: " + modConfig.getModName() + " (" + modConfig.getModId() + ")");
         
-        // 2. 资源注入
-        File modDirectory = new File(MODS_DIR, modConfig.getModId());
-        if (modDirectory.exists()) {
-            resourceInjector.injectModResources(modConfig, modDirectory);
+        // 1~3. 权限校验、资源注入、创建类加载器（加载计划中已有结果时直接使用）
+        LoadPlan.PlannedMod planned = plannedMods != null ? plannedMods.get(modConfig.getModId()) : null;
+        ModClassLoader classLoader;
+        if (planned != null) {
+            grantedPermissions.put(modConfig.getModId(), planned.getGrantedPermissions());
+            classLoader = new ModClassLoader(modConfig, planned.getClasspath(), getParentLoader());
+        } else {
+            classLoader = prepareMod(modConfig);
         }
-        
-        // 3. 创建类加载器
-        ModClassLoader classLoader = new ModClassLoader(modConfig, modDirectory, 
-            Thread.currentThread().getContextClassLoader());
+        classLoader.setDependencies(getDependencyLoaders(modConfig));
         modClassLoaders.put(modConfig.getModId(), classLoader);
         
         // 4. 加载入口类
@@ -196,6 +470,275 @@ public class ModLoader {
         }
     }
     
+    /**
+     * 记录加载顺序（依赖查找按此顺序）
+     */
+    private void setLoadOrder(List<ModConfig> sortedMods) {
+        loadOrder.clear();
+        for (int i = 0; i < sortedMods.size(); i++) {
+            loadOrder.put(sortedMods.get(i).getModId(), i);
+        }
+    }
+    
+    /**
+     * 获取模组的必需和可选依赖中已加载模组的类加载器（按加载顺序）
+     */
+    private List<ModClassLoader> getDependencyLoaders(ModConfig modConfig) {
+        List<String> depIds = new ArrayList<>();
+        for (String dependency : modConfig.getRequiredDependencies()) {
+            depIds.add(DependencyResolver.parseDependency(dependency)[0]);
+        }
+        for (String dependency : modConfig.getOptionalDependencies()) {
+            depIds.add(DependencyResolver.parseDependency(dependency)[0]);
+        }
+        List<ModClassLoader> loaders = new ArrayList<>(depIds.size());
+        depIds.sort(Comparator.comparingInt(id -> loadOrder.getOrDefault(id, Integer.MAX_VALUE)));
+        for (String depId : depIds) {
+            ModClassLoader loader = modClassLoaders.get(depId);
+            if (loader != null && loadedMods.containsKey(depId) && !loaders.contains(loader)) {
+                loaders.add(loader);
+            }
+        }
+        return loaders;
+    }
+    
+    /**
+     * 校验权限、注入资源并创建类加载器（完整加载流程）
+     */
+    private ModClassLoader prepareMod(ModConfig modConfig) throws Exception {
+        // 1. 权限校验
+        PermissionManager.PermissionCheckResult permResult = permissionManager.validatePermissions(modConfig);
+        if (!permResult.isValid()) {
+            System.err.println("模组权限校验失败 [" + modConfig.getModId() + "]:");
+            for (String error : permResult.getErrors()) {
+                System.err.println("  - " + error);
+            }
+            throw new Exception("权限校验失败");
+        }
+        
+        // 显示警告
+        for (String warning : permResult.getWarnings()) {
+            System.out.println("  [警告] " + warning);
+        }
+        
+        grantedPermissions.put(modConfig.getModId(), permResult.getGranted());
+        
+        // 2. 资源注入 & 3. 创建类加载器
+        File modDirectory = getModDirectory(modConfig);
+        ModClassLoader classLoader;
+        if (modConfig.isArchive()) {
+            // 压缩包模组：条目索引只建立一次，资源和类路径共用
+            try (ModArchive archive = new ModArchive(modDirectory)) {
+                resourceInjector.injectArchiveResources(modConfig, archive);
+                classLoader = new ModClassLoader(modConfig, archive, getParentLoader(), sharedLibraries);
+            }
+        } else {
+            if (modDirectory.exists()) {
+                resourceInjector.injectModResources(modConfig, modDirectory);
+            }
+            classLoader = new ModClassLoader(modConfig, modDirectory, getParentLoader(), sharedLibraries);
+        }
+        recordedMods.put(modConfig.getModId(),
+            new LoadPlan.PlannedMod(modConfig, classLoader.getURLs(), permResult.getGranted()));
+        return classLoader;
+    }
+    
+    /**
+     * 重载单个模组（无需重启）
+     * 卸载该模组及所有直接或间接依赖它的模组，只移除它们的监听器、资源、API和注册表条目，
+     * 然后从磁盘重新读取mod.json并按依赖顺序重新加载，最后检查旧的类加载器是否已被回收。
+     * 共享依赖库不会重新加载
+     * @param modId 模组ID
+     * @return 重载结果
+     */
+    public synchronized ReloadResult reloadMod(String modId) {
+        long start = System.nanoTime();
+        if (!initialized || !loadedMods.containsKey(modId)) {
+            System.err.println("无法重载模组，模组未加载: " + modId);
+            return new ReloadResult(Collections.emptyList(), Collections.singletonList(modId),
+                Collections.emptyList(), System.nanoTime() - start);
+        }
+        System.out.println("=== 重载模组: " + modId + " ===");
+        
+        // 1. 找出该模组及所有依赖它的模组，按加载顺序排列
+        List<String> affected = collectDependents(modId);
+        affected.sort(Comparator.comparingInt(id -> loadOrder.getOrDefault(id, Integer.MAX_VALUE)));
+        if (affected.size() > 1) {
+            System.out.println("依赖该模组、需要一起重载: " + affected.subList(1, affected.size()));
+        }
+        
+        // 2. 按加载顺序的逆序卸载
+        Map<String, File> sources = new LinkedHashMap<>();
+        for (String id : affected) {
+            ModConfig config = loadedMods.get(id);
+            sources.put(id, getModDirectory(config));
+        }
+        Map<String, WeakReference<ClassLoader>> oldLoaders = new LinkedHashMap<>();
+        for (int i = affected.size() - 1; i >= 0; i--) {
+            String id = affected.get(i);
+            oldLoaders.put(id, new WeakReference<>(unloadMod(id)));
+        }
+        int removedResources = resourceInjector.removeModResources(new HashSet<>(affected));
+        System.out.println("已卸载 " + affected.size() + " 个模组，移除 " + removedResources + " 个资源");
+        
+        // 3. 从磁盘重新读取配置
+        List<String> failed = new ArrayList<>();
+        Map<String, ModConfig> reloadedConfigs = new HashMap<>();
+        for (Map.Entry<String, File> entry : sources.entrySet()) {
+            try {
+                ModConfig config = entry.getValue().exists() ? scanner.readModConfig(entry.getValue()) : null;
+                if (config == null || !config.getModId().equals(entry.getKey())) {
+                    System.err.println("重载失败，模组已被移除或modId已变化: " + entry.getKey());
+                    failed.add(entry.getKey());
+                } else if (!config.isCompatibleWith(gameVersion)) {
+                    System.err.println("重载失败，模组不兼容: " + entry.getKey() + " v" + config.getVersion() +
+                        " (需要: " + config.getGameVersion() + ", 当前: " + gameVersion + ")");
+                    failed.add(entry.getKey());
+                } else {
+                    reloadedConfigs.put(entry.getKey(), config);
+                }
+            } catch (Exception e) {
+                System.err.println("重载失败，读取模组配置出错 [" + entry.getKey() + "]: " + e.getMessage());
+                failed.add(entry.getKey());
+            }
+        }
+        
+        // 4. 与其余已加载模组一起解析依赖，按新的顺序加载
+        List<String> reloaded = new ArrayList<>();
+        if (!reloadedConfigs.isEmpty()) {
+            Map<String, ModConfig> allMods = new HashMap<>(loadedMods);
+            allMods.putAll(reloadedConfigs);
+            try {
+                List<ModConfig> sortedMods = dependencyResolver.resolveDependencies(allMods);
+                setLoadOrder(sortedMods);
+                List<ModConfig> toLoad = new ArrayList<>(reloadedConfigs.size());
+                for (ModConfig config : sortedMods) {
+                    if (reloadedConfigs.containsKey(config.getModId())) {
+                        toLoad.add(config);
+                    }
+                }
+                loadMods(toLoad);
+            } catch (DependencyException e) {
+                System.err.println("重载失败，依赖解析出错: " + e.getMessage());
+            }
+            for (String id : affected) {
+                if (loadedMods.containsKey(id)) {
+                    reloaded.add(id);
+                } else if (!failed.contains(id)) {
+                    failed.add(id);
+                }
+            }
+        }
+        
+        // 5. 检查旧的类加载器是否已被回收
+        List<String> leaked = checkCollected(oldLoaders);
+        
+        ReloadResult result = new ReloadResult(reloaded, failed, leaked, System.nanoTime() - start);
+        System.out.println(result);
+        return result;
+    }
+    
+    /**
+     * 收集模组及所有直接或间接依赖它（必需或可选依赖）的已加载模组
+     */
+    private List<String> collectDependents(String modId) {
+        Set<String> affected = new LinkedHashSet<>();
+        affected.add(modId);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (ModConfig config : loadedMods.values()) {
+                if (affected.contains(config.getModId())) {
+                    continue;
+                }
+                List<String> deps = new ArrayList<>(config.getRequiredDependencies());
+                deps.addAll(config.getOptionalDependencies());
+                for (String dep : deps) {
+                    if (affected.contains(DependencyResolver.parseDependency(dep)[0])) {
+                        affected.add(config.getModId());
+                        changed = true;
+                        break;
+                    }
+                }
+            }
+        }
+        return new ArrayList<>(affected);
+    }
+    
+    /**
+     * 卸载单个模组：调用onUnload，移除它的监听器、API和注册表条目，关闭类加载器
+     * @return 旧的类加载器
+     */
+    private ModClassLoader unloadMod(String modId) {
+        IModEntry entry = modEntries.remove(modId);
+        if (entry != null) {
+            try {
+                entry.onUnload();
+                System.out.println("模组卸载成功: " + modId);
+            } catch (Exception e) {
+                System.err.println("模组卸载失败 [" + modId + "]: " + e.getMessage());
+                e.printStackTrace();
+            }
+        }
+        
+        ModClassLoader loader = modClassLoaders.remove(modId);
+        if (loader != null) {
+            eventBus.removeListeners(loader);
+            apiInstances.entrySet().removeIf(e -> e.getKey().getClassLoader() == loader ||
+                e.getValue().getClass().getClassLoader() == loader);
+        }
+        for (Registry<?> registry : registries) {
+            registry.removeNamespace(modId);
+        }
+        modAPIs.remove(modId);
+        loadedMods.remove(modId);
+        grantedPermissions.remove(modId);
+        recordedMods.remove(modId);
+        
+        if (loader != null) {
+            try {
+                loader.close();
+            } catch (Exception e) {
+                System.err.println("关闭类加载器失败: " + e.getMessage());
+            }
+        }
+        return loader;
+    }
+    
+    /**
+     * 触发GC并检查旧的类加载器是否已被回收，未回收的说明仍被引用（静态字段、线程、缓存等），会造成Metaspace泄漏
+     * @return 未被回收的模组ID
+     */
+    private static List<String> checkCollected(Map<String, WeakReference<ClassLoader>> oldLoaders) {
+        for (int attempt = 0; attempt < 5; attempt++) {
+            boolean alive = false;
+            for (WeakReference<ClassLoader> ref : oldLoaders.values()) {
+                if (ref.get() != null) {
+                    alive = true;
+                    break;
+                }
+            }
+            if (!alive) {
+                break;
+            }
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        List<String> leaked = new ArrayList<>();
+        for (Map.Entry<String, WeakReference<ClassLoader>> entry : oldLoaders.entrySet()) {
+            if (entry.getValue().get() != null) {
+                System.err.println("  [警告] 模组旧的类加载器未被回收，可能存在泄漏: " + entry.getKey());
+                leaked.add(entry.getKey());
+            }
+        }
+        return leaked;
+    }
+    
     /**
      * 卸载所有模组
      */
@@ -220,18 +763,94 @@ public class ModLoader {
                 System.err.println("关闭类加载器失败: " + e.getMessage());
             }
         }
+        if (sharedLibraries != null) {
+            sharedLibraries.close();
+            sharedLibraries = null;
+        }
         
         // 清理
         loadedMods.clear();
         modClassLoaders.clear();
         modEntries.clear();
         apiInstances.clear();
+        grantedPermissions.clear();
+        modAPIs.clear();
+        loadOrder.clear();
+        recordedMods.clear();
         resourceInjector.clear();
         eventBus.clear();
         
         initialized = false;
     }
     
+    /**
+     * 设置是否使用扫描缓存（需在initialize之前调用）
+     * 缓存保存在模组目录下，只有发生变化的模组才会重新解析mod.json和遍历资源目录
+     */
+    public void setScanCacheEnabled(boolean enabled) {
+        if (enabled == (scanCache != null)) {
+            return;
+        }
+        scanCache = enabled ? new ModScanCache(Paths.get(MODS_DIR, SCAN_CACHE_FILE)) : null;
+        scanner.setScanCache(scanCache);
+        resourceInjector.setScanCache(scanCache);
+    }
+    
+    /**
+     * 设置是否使用加载计划（需在initialize之前调用）
+     * 开启后每次完整加载成功都会保存加载计划，下次启动时如果模组文件、游戏版本和权限配置都没有变化，
+     * 直接按计划加载，不再扫描模组和解析依赖
+     */
+    public void setLoadPlanEnabled(boolean enabled) {
+        this.loadPlanEnabled = enabled;
+    }
+    
+    /**
+     * 设置是否使用资源包（需在initialize之前调用）
+     * 开启后完整加载结束时把所有生效的资源打包到mods/.flml-asset-pack，按加载计划启动时直接使用已有的资源包；
+     * ResourceInjector.getResource()优先返回资源包映射内存的切片，不在包中或已变化的资源读取源文件
+     */
+    public void setAssetPackEnabled(boolean enabled) {
+        this.assetPackEnabled = enabled;
+    }
+    
+    /**
+     * 将注册表交给加载器管理：重载模组时移除该模组命名空间（modId:）下的条目
+     */
+    public void registerRegistry(Registry<?> registry) {
+        registries.add(registry);
+    }
+    
+    /**
+     * 设置是否共享依赖库（需在initialize之前调用）
+     * 开启后多个模组lib/中内容相同的JAR由一个公共父加载器加载一次；同一个库存在不同版本时各模组仍各自加载
+     */
+    public void setSharedLibrariesEnabled(boolean enabled) {
+        this.sharedLibrariesEnabled = enabled;
+    }
+    
+    /**
+     * 获取共享依赖库统计（未使用共享依赖库时返回null）
+     */
+    public SharedLibraryManager.SharedLibraryStats getSharedLibraryStats() {
+        return sharedLibraries != null ? sharedLibraries.getStats() : null;
+    }
+    
+    /**
+     * 设置是否按依赖关系并行初始化模组（需在initialize之前调用）
+     * 开启后互不依赖的模组会在多个线程上同时创建类加载器、注入资源并执行onInit
+     */
+    public void setParallelInit(boolean parallelInit) {
+        this.parallelInit = parallelInit;
+    }
+    
+    /**
+     * 设置是否并行扫描模组（需在initialize之前调用）
+     */
+    public void setParallelScanning(boolean parallel) {
+        scanner.setParallel(parallel);
+    }
+    
     /**
      * 获取API实例（供ModContext使用）
      */
@@ -255,6 +874,43 @@ public class ModLoader {
         apiInstances.put(apiClass, instance);
     }
     
+    /**
+     * 注册模组暴露给其他模组的API（供ModContext使用）
+     */
+    public <T> void registerModAPI(String modId, Class<T> apiClass, T instance) {
+        modAPIs.computeIfAbsent(modId, k -> new ConcurrentHashMap<>()).put(apiClass, instance);
+    }
+    
+    /**
+     * 获取模组暴露的API
+     * 调用方的apiClass必须与注册时是同一个类（即调用方通过依赖关系看到了目标模组的API接口），
+     * 否则返回null
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T getModAPI(String modId, Class<T> apiClass) {
+        Map<Class<?>, Object> apis = modAPIs.get(modId);
+        if (apis == null) {
+            return null;
+        }
+        Object instance = apis.get(apiClass);
+        if (instance != null) {
+            return (T) instance;
+        }
+        for (Object candidate : apis.values()) {
+            if (apiClass.isInstance(candidate)) {
+                return (T) candidate;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * 获取资源注入器（供文件监视器增量更新资源）
+     */
+    ResourceInjector getResourceInjector() {
+        return resourceInjector;
+    }
+    
     /**
      * 获取事件总线
      */
@@ -276,6 +932,14 @@ public class ModLoader {
         return new HashMap<>(loadedMods);
     }
     
+    /**
+     * 获取模组已被授予的权限
+     * @return 权限列表，模组未加载时返回空列表
+     */
+    public List<PermissionManager.Permission> getGrantedPermissions(String modId) {
+        return grantedPermissions.getOrDefault(modId, Collections.emptyList());
+    }
+    
     /**
      * 检查模组是否已加载
      */
@@ -283,6 +947,58 @@ public class ModLoader {
         return loadedMods.containsKey(modId);
     }
     
+    /**
+     * 模组重载结果
+     */
+    public static class ReloadResult {
+        private final List<String> reloadedMods;
+        private final List<String> failedMods;
+        private final List<String> leakedMods;
+        private final long elapsedNanos;
+        
+        public ReloadResult(List<String> reloadedMods, List<String> failedMods, List<String> leakedMods, long elapsedNanos) {
+            this.reloadedMods = reloadedMods;
+            this.failedMods = failedMods;
+            this.leakedMods = leakedMods;
+            this.elapsedNanos = elapsedNanos;
+        }
+        
+        /**
+         * 重新加载成功的模组（按加载顺序）
+         */
+        public List<String> getReloadedMods() {
+            return reloadedMods;
+        }
+        
+        /**
+         * 已卸载但未能重新加载的模组
+         */
+        public List<String> getFailedMods() {
+            return failedMods;
+        }
+        
+        /**
+         * 旧的类加载器未被回收的模组
+         */
+        public List<String> getLeakedMods() {
+            return leakedMods;
+        }
+        
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+        
+        public boolean isSuccess() {
+            return failedMods.isEmpty();
+        }
+        
+        @Override
+        public String toString() {
+            return String.format("模组重载%s: 重载 %s, 失败 %s, 未回收 %s, 耗时 %.1fms",
+                isSuccess() ? "完成" : "部分失败", reloadedMods, failedMods, leakedMods, elapsedNanos / 1e6);
+        }
+    }
+    
     /**
      * ModInteractor实现类
      */
@@ -300,9 +1016,10 @@ public class ModLoader {
         
         @Override
         public <T> T getModAPI(String targetModId, Class<T> apiClass) {
-            // TODO: 实现从其他模组获取API
-            // 目前返回null
-            return null;
+            if (modLoader == null || !modLoader.isModLoaded(targetModId)) {
+                return null;
+            }
+            return modLoader.getModAPI(targetModId, apiClass);
         }
     }
 }
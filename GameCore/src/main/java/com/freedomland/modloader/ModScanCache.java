@@ -0,0 +1,263 @@
+package com.freedomland.modloader;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32C;
+
+/**
+ * 模组扫描缓存
+ * 在模组目录下保存二进制索引，记录每个mod.json的解析结果和每个assets目录的文件清单。
+ *
+ * 校验规则：
+ * - mod.json：大小和修改时间一致直接复用；不一致时计算内容哈希，哈希一致仍复用
+ * - assets目录：所有子目录的修改时间一致即复用文件清单（增删文件会改变所在目录的修改时间）
+ *
+ * 只有发生变化的模组才会重新解析和遍历。
+ */
+public class ModScanCache {
+    
+    private static final int MAGIC = 0x464C5343; // "FLSC"
+    private static final int FORMAT_VERSION = 3;
+    
+    private final Path cacheFile;
+    private final Map<String, ConfigEntry> configs;
+    private final Map<String, AssetEntry> assets;
+    private final Set<String> touched;
+    private volatile boolean dirty;
+    
+    /**
+     * 构造函数
+     * @param cacheFile 缓存文件路径
+     */
+    public ModScanCache(Path cacheFile) {
+        this.cacheFile = cacheFile;
+        this.configs = new ConcurrentHashMap<>();
+        this.assets = new ConcurrentHashMap<>();
+        this.touched = ConcurrentHashMap.newKeySet();
+    }
+    
+    /**
+     * 从磁盘读取缓存（文件不存在或已损坏时以空缓存开始）
+     */
+    public void load() {
+        configs.clear();
+        assets.clear();
+        touched.clear();
+        dirty = false;
+        if (!Files.isRegularFile(cacheFile)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(cacheFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                System.out.println("扫描缓存格式不匹配，重新扫描");
+                return;
+            }
+            int configCount = in.readInt();
+            for (int i = 0; i < configCount; i++) {
+                String path = readString(in);
+                long size = in.readLong();
+                long modified = in.readLong();
+                long hash = in.readLong();
+                ModConfig config = ModConfig.readFrom(in);
+                configs.put(path, new ConfigEntry(size, modified, hash, config));
+            }
+            int assetCount = in.readInt();
+            for (int i = 0; i < assetCount; i++) {
+                String path = readString(in);
+                String[] dirs = readStringArray(in);
+                long[] dirModified = new long[dirs.length];
+                for (int j = 0; j < dirs.length; j++) {
+                    dirModified[j] = in.readLong();
+                }
+                String[] files = readStringArray(in);
+                assets.put(path, new AssetEntry(dirs, dirModified, files));
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("读取扫描缓存失败，重新扫描: " + e.getMessage());
+            configs.clear();
+            assets.clear();
+        }
+    }
+    
+    /**
+     * 将缓存写回磁盘（未变化时跳过），只保留本次扫描访问过的条目
+     */
+    public void save() {
+        boolean pruned = configs.keySet().retainAll(touched) | assets.keySet().retainAll(touched);
+        if (!dirty && !pruned) {
+            return;
+        }
+        Path tmp = cacheFile.resolveSibling(cacheFile.getFileName() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeInt(configs.size());
+                for (Map.Entry<String, ConfigEntry> entry : configs.entrySet()) {
+                    ConfigEntry e = entry.getValue();
+                    writeString(out, entry.getKey());
+                    out.writeLong(e.size);
+                    out.writeLong(e.modified);
+                    out.writeLong(e.hash);
+                    e.config.writeTo(out);
+                }
+                out.writeInt(assets.size());
+                for (Map.Entry<String, AssetEntry> entry : assets.entrySet()) {
+                    AssetEntry e = entry.getValue();
+                    writeString(out, entry.getKey());
+                    writeStringArray(out, e.dirs);
+                    for (long modified : e.dirModified) {
+                        out.writeLong(modified);
+                    }
+                    writeStringArray(out, e.files);
+                }
+            }
+            Files.move(tmp, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            dirty = false;
+        } catch (IOException e) {
+            System.err.println("写入扫描缓存失败: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * 查找未变化的mod.json解析结果
+     * @param key 缓存键（mod.json路径，压缩包为"压缩包路径!/mod.json"）
+     * @param attrs 文件属性（压缩包为压缩包本身的属性）
+     * @param content 文件内容（为null时只比较大小和修改时间）
+     * @return 缓存的配置，已变化返回null
+     */
+    ModConfig findConfig(String key, BasicFileAttributes attrs, byte[] content) {
+        ConfigEntry entry = configs.get(key);
+        if (entry == null) {
+            return null;
+        }
+        long modified = attrs.lastModifiedTime().toMillis();
+        if (entry.size == attrs.size() && entry.modified == modified) {
+            touched.add(key);
+            return entry.config;
+        }
+        if (content != null && entry.hash == hash(content)) {
+            // 内容未变（如重新解压、压缩包内其他文件变化），更新时间戳
+            configs.put(key, new ConfigEntry(attrs.size(), modified, entry.hash, entry.config));
+            touched.add(key);
+            dirty = true;
+            return entry.config;
+        }
+        return null;
+    }
+    
+    /**
+     * 记录新解析的mod.json
+     */
+    void putConfig(String key, BasicFileAttributes attrs, byte[] content, ModConfig config) {
+        configs.put(key, new ConfigEntry(attrs.size(), attrs.lastModifiedTime().toMillis(), hash(content), config));
+        touched.add(key);
+        dirty = true;
+    }
+    
+    /**
+     * 查找未变化的assets目录文件清单
+     * @param assetsDir assets目录（压缩包模组传入压缩包本身，只校验其修改时间）
+     * @return 相对模组目录的文件路径（"/"分隔），已变化返回null
+     */
+    String[] findAssets(File assetsDir) {
+        String key = assetsDir.getAbsolutePath();
+        AssetEntry entry = assets.get(key);
+        if (entry == null) {
+            return null;
+        }
+        for (int i = 0; i < entry.dirs.length; i++) {
+            File dir = entry.dirs[i].isEmpty() ? assetsDir : new File(assetsDir, entry.dirs[i]);
+            if (dir.lastModified() != entry.dirModified[i]) {
+                return null;
+            }
+        }
+        touched.add(key);
+        return entry.files;
+    }
+    
+    /**
+     * 记录assets目录文件清单
+     * @param dirs 子目录（相对assets目录，""表示assets目录本身）
+     * @param dirModified 各子目录的修改时间
+     * @param files 文件路径（相对模组目录）
+     */
+    void putAssets(File assetsDir, String[] dirs, long[] dirModified, String[] files) {
+        String key = assetsDir.getAbsolutePath();
+        assets.put(key, new AssetEntry(dirs, dirModified, files));
+        touched.add(key);
+        dirty = true;
+    }
+    
+    /**
+     * 计算内容哈希
+     */
+    static long hash(byte[] content) {
+        CRC32C crc = new CRC32C();
+        crc.update(content);
+        return crc.getValue();
+    }
+    
+    static void writeString(DataOutput out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+    
+    static String readString(DataInput in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    
+    static void writeStringArray(DataOutput out, String[] values) throws IOException {
+        out.writeInt(values.length);
+        for (String value : values) {
+            writeString(out, value);
+        }
+    }
+    
+    static String[] readStringArray(DataInput in) throws IOException {
+        String[] values = new String[in.readInt()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = readString(in);
+        }
+        return values;
+    }
+    
+    /**
+     * mod.json缓存条目
+     */
+    private static final class ConfigEntry {
+        final long size;
+        final long modified;
+        final long hash;
+        final ModConfig config;
+        
+        ConfigEntry(long size, long modified, long hash, ModConfig config) {
+            this.size = size;
+            this.modified = modified;
+            this.hash = hash;
+            this.config = config;
+        }
+    }
+    
+    /**
+     * assets目录缓存条目
+     */
+    private static final class AssetEntry {
+        final String[] dirs;
+        final long[] dirModified;
+        final String[] files;
+        
+        AssetEntry(String[] dirs, long[] dirModified, String[] files) {
+            this.dirs = dirs;
+            this.dirModified = dirModified;
+            this.files = files;
+        }
+    }
+}
@@ -1,14 +1,20 @@
 package com.freedomland.modloader;
 
-import com.google.gson.Gson;
-import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
+import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
 
 /**
  * 模组扫描器
@@ -19,21 +25,50 @@ public class ModScanner {
     private static final String MODS_DIR = "mods";
     private static final String MOD_JSON = "mod.json";
     
-    private Gson gson;
+    // 是否并行解析mod.json
+    private boolean parallel;
+    
+    // 最近一次扫描的各阶段耗时
+    private ScanTimings lastScanTimings;
+    
+    // 扫描缓存（为null时每次都重新解析）
+    private ModScanCache cache;
     
     /**
      * 构造函数
      */
     public ModScanner() {
-        this.gson = new Gson();
+        this.parallel = false;
     }
     
     /**
      * 扫描所有模组
+     * 同一模组ID存在多个版本时只返回最新的版本
      * @return 模组配置映射表（modId -> ModConfig）
      */
     public Map<String, ModConfig> scanMods() {
         Map<String, ModConfig> mods = new HashMap<>();
+        for (Map.Entry<String, List<ModConfig>> entry : scanModCandidates().entrySet()) {
+            mods.put(entry.getKey(), entry.getValue().get(0));
+        }
+        return mods;
+    }
+    
+    /**
+     * 列出模组目录下的模组目录和模组压缩包（未排序）
+     * 以.flml开头的是加载器自己写入的缓存、加载计划和解压目录，不是模组
+     * @return 模组来源，目录不可读时返回null
+     */
+    static File[] listModSources(File modsDir) {
+        return modsDir.listFiles(f -> !f.getName().startsWith(".flml") && (f.isDirectory() || ModArchive.isArchive(f)));
+    }
+    
+    /**
+     * 扫描所有模组，保留同一模组ID的所有版本（供依赖解析时选择）
+     * @return 模组ID -> 该ID的所有版本（新版本在前）
+     */
+    public Map<String, List<ModConfig>> scanModCandidates() {
+        Map<String, List<ModConfig>> mods = new HashMap<>();
         
         try {
             Path modsDir = Paths.get(MODS_DIR);
@@ -43,30 +78,57 @@ public class ModScanner {
                 return mods;
             }
             
-            File[] modDirectories = modsDir.toFile().listFiles(File::isDirectory);
-            if (modDirectories == null) {
+            // 1. 列出模组目录和模组压缩包（按名称排序，保证结果确定）
+            long listStart = System.nanoTime();
+            File[] modSources = listModSources(modsDir.toFile());
+            if (modSources == null) {
                 return mods;
             }
+            Arrays.sort(modSources, Comparator.comparing(File::getName));
             
-            for (File modDir : modDirectories) {
-                try {
-                    ModConfig config = loadModConfig(modDir);
-                    if (config != null) {
-                        // 检查重复的modId
-                        if (mods.containsKey(config.getModId())) {
-                            System.err.println("警告: 发现重复的模组ID '" + config.getModId() + 
-                                "' 在目录 '" + modDir.getName() + "', 跳过");
-                            continue;
+            // 2. 解析mod.json（可并行）
+            long parseStart = System.nanoTime();
+            ScanResult[] results = parseAll(modSources);
+            
+            // 3. 按目录顺序合并，检测重复的ID和版本
+            long mergeStart = System.nanoTime();
+            for (int i = 0; i < modSources.length; i++) {
+                File modDir = modSources[i];
+                ScanResult result = results[i];
+                if (result.error != null) {
+                    System.err.println("加载模组配置失败 [" + modDir.getName() + "]: " + result.error.getMessage());
+                    result.error.printStackTrace();
+                    continue;
+                }
+                ModConfig config = result.config;
+                if (config != null) {
+                    List<ModConfig> versions = mods.computeIfAbsent(config.getModId(), k -> new ArrayList<>());
+                    // 检查重复的modId（同一版本）
+                    boolean duplicate = false;
+                    for (ModConfig existing : versions) {
+                        if (existing.getVersion().equals(config.getVersion())) {
+                            duplicate = true;
+                            break;
                         }
-                        mods.put(config.getModId(), config);
-                        System.out.println("扫描到模组: " + config.getModName() + " (" + 
-                            config.getModId() + " v" + config.getVersion() + ")");
                     }
-                } catch (Exception e) {
-                    System.err.println("加载模组配置失败 [" + modDir.getName() + "]: " + e.getMessage());
-                    e.printStackTrace();
+                    if (duplicate) {
+                        System.err.println("警告: 发现重复的模组ID '" + config.getModId() +
+                            "' 在目录 '" + modDir.getName() + "', 跳过");
+                        continue;
+                    }
+                    versions.add(config);
+                    System.out.println("扫描到模组: " + config.getModName() + " (" +
+                        config.getModId() + " v" + config.getVersion() + ")");
                 }
             }
+            for (List<ModConfig> versions : mods.values()) {
+                versions.sort(VersionSelector::compareNewestFirst);
+            }
+            long mergeEnd = System.nanoTime();
+            
+            lastScanTimings = new ScanTimings(modSources.length, parallel,
+                parseStart - listStart, mergeStart - parseStart, mergeEnd - mergeStart);
+            System.out.println(lastScanTimings);
             
         } catch (IOException e) {
             System.err.println("扫描模组目录失败: " + e.getMessage());
@@ -76,26 +138,125 @@ public class ModScanner {
         return mods;
     }
     
+    /**
+     * 解析所有模组目录/压缩包的配置，结果下标与目录下标一一对应
+     */
+    private ScanResult[] parseAll(File[] modDirectories) {
+        ScanResult[] results = new ScanResult[modDirectories.length];
+        if (!parallel || modDirectories.length < 2) {
+            for (int i = 0; i < modDirectories.length; i++) {
+                results[i] = parseOne(modDirectories[i]);
+            }
+            return results;
+        }
+        
+        ForkJoinPool pool = new ForkJoinPool(Math.min(modDirectories.length,
+            Runtime.getRuntime().availableProcessors()));
+        try {
+            pool.submit(() -> IntStream.range(0, modDirectories.length).parallel()
+                .forEach(i -> results[i] = parseOne(modDirectories[i]))).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            System.err.println("并行扫描模组失败，改为顺序扫描: " + e.getCause().getMessage());
+        } finally {
+            pool.shutdown();
+        }
+        
+        // 中断或失败时补齐未完成的条目
+        for (int i = 0; i < modDirectories.length; i++) {
+            if (results[i] == null) {
+                results[i] = parseOne(modDirectories[i]);
+            }
+        }
+        return results;
+    }
+    
+    /**
+     * 解析单个模组目录/压缩包（异常留到合并阶段按顺序输出）
+     */
+    private ScanResult parseOne(File modSource) {
+        try {
+            return new ScanResult(loadModConfig(modSource), null);
+        } catch (Exception e) {
+            return new ScanResult(null, e);
+        }
+    }
+    
+    /**
+     * 重新读取单个模组的配置（模组重载时调用）
+     * @param modSource 模组目录或压缩包
+     * @return 模组配置，mod.json不存在时返回null
+     */
+    public ModConfig readModConfig(File modSource) throws IOException {
+        return loadModConfig(modSource);
+    }
+    
     /**
      * 加载单个模组的配置
+     * 有扫描缓存时先比较大小和修改时间，再比较内容哈希，都不一致才重新解析
      */
-    private ModConfig loadModConfig(File modDirectory) throws IOException {
-        Path modJsonPath = Paths.get(modDirectory.getAbsolutePath(), MOD_JSON);
+    @SuppressWarnings("deprecation") // setLenient在新版Gson中已被setStrictness取代，旧版仍需使用
+    private ModConfig loadModConfig(File modSource) throws IOException {
+        boolean archive = ModArchive.isArchive(modSource);
+        // 压缩包以压缩包本身的大小和修改时间作为快速校验依据
+        Path statPath = archive ? modSource.toPath().toAbsolutePath()
+            : Paths.get(modSource.getAbsolutePath(), MOD_JSON);
+        String cacheKey = archive ? statPath + "!/" + MOD_JSON : statPath.toString();
         
-        if (!Files.exists(modJsonPath)) {
-            System.err.println("模组配置文件不存在: " + modJsonPath);
+        BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(statPath, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            System.err.println("模组配置文件不存在: " + statPath);
             return null;
         }
         
-        try (FileReader reader = new FileReader(modJsonPath.toFile())) {
-            JsonObject json = gson.fromJson(reader, JsonObject.class);
+        ModScanCache cache = this.cache;
+        if (cache != null) {
+            ModConfig cached = cache.findConfig(cacheKey, attrs, null);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        
+        byte[] content;
+        if (archive) {
+            try (ModArchive modArchive = new ModArchive(modSource)) {
+                content = modArchive.read(MOD_JSON);
+            }
+            if (content == null) {
+                System.err.println("模组配置文件不存在: " + cacheKey);
+                return null;
+            }
+        } else {
+            content = Files.readAllBytes(statPath);
+        }
+        if (cache != null) {
+            ModConfig cached = cache.findConfig(cacheKey, attrs, content);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        
+        // 流式解析，只提取已知字段，不构建完整的JSON树
+        try (JsonReader reader = new JsonReader(new InputStreamReader(
+                new ByteArrayInputStream(content), StandardCharsets.UTF_8))) {
+            reader.setLenient(true); // 与Gson.fromJson的容错程度保持一致
+            ModConfig config = ModConfig.fromJsonReader(reader);
             
             // 验证必需字段
-            if (!json.has("modId") || !json.has("entryClass")) {
+            if (config.getModId() == null || config.getEntryClass() == null) {
                 throw new IOException("模组配置缺少必需字段: modId 或 entryClass");
             }
+            if (config.getVersion() == null) {
+                throw new IOException("模组配置缺少必需字段: version");
+            }
             
-            ModConfig config = ModConfig.fromJson(json);
+            config.setModSource(modSource.getAbsoluteFile());
+            if (cache != null) {
+                cache.putConfig(cacheKey, attrs, content, config);
+            }
             return config;
         }
     }
@@ -105,6 +266,13 @@ public class ModScanner {
      */
     public boolean validateModStructure(File modDirectory) {
         // 检查必需文件
+        if (ModArchive.isArchive(modDirectory)) {
+            try (ModArchive archive = new ModArchive(modDirectory)) {
+                return archive.contains(MOD_JSON);
+            } catch (IOException e) {
+                return false;
+            }
+        }
         if (!new File(modDirectory, MOD_JSON).exists()) {
             return false;
         }
@@ -115,11 +283,94 @@ public class ModScanner {
         return true;
     }
     
+    /**
+     * 设置是否并行解析模组配置（模组数量较多时可缩短启动时间）
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+    
+    /**
+     * 设置扫描缓存（null表示不使用缓存）
+     */
+    public void setScanCache(ModScanCache cache) {
+        this.cache = cache;
+    }
+    
+    /**
+     * 获取最近一次扫描的各阶段耗时
+     */
+    public ScanTimings getLastScanTimings() {
+        return lastScanTimings;
+    }
+    
     /**
      * 获取模组目录路径
      */
     public static String getModsDirectory() {
         return MODS_DIR;
     }
+    
+    /**
+     * 单个模组目录的解析结果
+     */
+    private static class ScanResult {
+        final ModConfig config;
+        final Exception error;
+        
+        ScanResult(ModConfig config, Exception error) {
+            this.config = config;
+            this.error = error;
+        }
+    }
+    
+    /**
+     * 扫描各阶段耗时
+     */
+    public static class ScanTimings {
+        private final int modCount;
+        private final boolean parallel;
+        private final long listNanos;
+        private final long parseNanos;
+        private final long mergeNanos;
+        
+        public ScanTimings(int modCount, boolean parallel, long listNanos, long parseNanos, long mergeNanos) {
+            this.modCount = modCount;
+            this.parallel = parallel;
+            this.listNanos = listNanos;
+            this.parseNanos = parseNanos;
+            this.mergeNanos = mergeNanos;
+        }
+        
+        public int getModCount() {
+            return modCount;
+        }
+        
+        public boolean isParallel() {
+            return parallel;
+        }
+        
+        public long getListNanos() {
+            return listNanos;
+        }
+        
+        public long getParseNanos() {
+            return parseNanos;
+        }
+        
+        public long getMergeNanos() {
+            return mergeNanos;
+        }
+        
+        public long getTotalNanos() {
+            return listNanos + parseNanos + mergeNanos;
+        }
+        
+        @Override
+        public String toString() {
+            return String.format("模组扫描耗时 (%d个目录, %s): 列目录 %.1fms, 解析 %.1fms, 合并 %.1fms, 总计 %.1fms",
+                modCount, parallel ? "并行" : "顺序", listNanos / 1e6, parseNanos / 1e6,
+                mergeNanos / 1e6, getTotalNanos() / 1e6);
+        }
+    }
 }
-
@@ -0,0 +1,367 @@
+package com.freedomland.modloader;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * 模组文件监视器
+ * 使用WatchService监视mods目录及已加载目录模组的所有子目录，事件经过防抖合并成批次后处理：
+ * - assets/下的文件变化：只增量更新受影响路径的资源映射和所属模组
+ * - mod.json、src/、lib/、模组根目录下的JAR、模组压缩包的变化：报告需要重载代码的模组（可调用ModLoader.reloadMod）
+ * - mods目录下新增或删除的模组：报告，需要重新初始化才会加载
+ */
+public class ModWatcher implements Closeable {
+    
+    private static final long DEFAULT_DEBOUNCE_MILLIS = 200;
+    private static final long MAX_BATCH_DELAY_MILLIS = 2000; // 持续有事件时，批次最多等待的时间
+    private static final String ASSETS_PREFIX = "assets/";
+    
+    private final ModLoader modLoader;
+    private final Path modsDir;
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> watchedDirs = new HashMap<>();
+    private final List<ChangeListener> listeners = new CopyOnWriteArrayList<>();
+    private volatile long debounceMillis = DEFAULT_DEBOUNCE_MILLIS;
+    private Thread thread;
+    private volatile boolean running;
+    
+    /**
+     * 构造函数
+     * @param modLoader 已初始化的模组加载器
+     * @param modsDir 模组目录
+     */
+    public ModWatcher(ModLoader modLoader, File modsDir) throws IOException {
+        this.modLoader = modLoader;
+        this.modsDir = modsDir.toPath().toAbsolutePath().normalize();
+        this.watchService = FileSystems.getDefault().newWatchService();
+    }
+    
+    /**
+     * 注册监视目录并启动后台线程
+     */
+    public synchronized void start() throws IOException {
+        if (running) {
+            return;
+        }
+        register(modsDir);
+        for (ModConfig config : modLoader.getLoadedMods().values()) {
+            File source = config.getModSource();
+            if (source != null && source.isDirectory()) {
+                registerTree(source.toPath().toAbsolutePath().normalize(), null);
+            }
+        }
+        running = true;
+        thread = new Thread(this::run, "FLML-ModWatcher");
+        thread.setDaemon(true);
+        thread.start();
+        System.out.println("模组文件监视已启动，监视 " + watchedDirs.size() + " 个目录");
+    }
+    
+    /**
+     * 设置防抖时间：最后一个事件之后等待多久没有新事件才处理批次
+     */
+    public void setDebounceMillis(long debounceMillis) {
+        this.debounceMillis = debounceMillis;
+    }
+    
+    /**
+     * 添加变化监听器（在监视线程上调用）
+     */
+    public void addListener(ChangeListener listener) {
+        listeners.add(listener);
+    }
+    
+    public void removeListener(ChangeListener listener) {
+        listeners.remove(listener);
+    }
+    
+    /**
+     * 监视线程：等待第一个事件，然后持续收集直到安静debounceMillis（最长MAX_BATCH_DELAY_MILLIS），再处理整批
+     */
+    private void run() {
+        while (running) {
+            Set<Path> changed = new LinkedHashSet<>();
+            Set<Path> overflowed = new LinkedHashSet<>();
+            int events;
+            try {
+                WatchKey key = watchService.take();
+                long start = System.nanoTime();
+                events = drain(key, changed, overflowed);
+                long batchDeadline = start + TimeUnit.MILLISECONDS.toNanos(MAX_BATCH_DELAY_MILLIS);
+                while (true) {
+                    long wait = Math.min(debounceMillis, TimeUnit.NANOSECONDS.toMillis(batchDeadline - System.nanoTime()));
+                    if (wait <= 0) {
+                        break;
+                    }
+                    key = watchService.poll(wait, TimeUnit.MILLISECONDS);
+                    if (key == null) {
+                        break;
+                    }
+                    events += drain(key, changed, overflowed);
+                }
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                break;
+            }
+            
+            try {
+                ChangeBatch batch = process(changed, overflowed, events);
+                System.out.println(batch);
+                for (ChangeListener listener : listeners) {
+                    listener.onChange(batch);
+                }
+            } catch (RuntimeException e) {
+                System.err.println("处理模组文件变化失败: " + e.getMessage());
+                e.printStackTrace();
+            }
+        }
+    }
+    
+    /**
+     * 取出一个WatchKey上的所有事件
+     * @return 事件数
+     */
+    private int drain(WatchKey key, Set<Path> changed, Set<Path> overflowed) {
+        Path dir = watchedDirs.get(key);
+        int count = 0;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            count++;
+            if (dir == null) {
+                continue;
+            }
+            if (event.kind() == OVERFLOW) {
+                overflowed.add(dir);
+                continue;
+            }
+            Path path = dir.resolve((Path) event.context());
+            changed.add(path);
+            // 新建（或移入）的目录需要加入监视，其中已有的文件也按变化处理
+            if (event.kind() == ENTRY_CREATE && Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS) && !dir.equals(modsDir)) {
+                try {
+                    registerTree(path, changed);
+                } catch (IOException e) {
+                    System.err.println("无法监视目录 " + path + ": " + e.getMessage());
+                }
+            }
+        }
+        if (!key.reset()) {
+            watchedDirs.remove(key);
+        }
+        return count;
+    }
+    
+    /**
+     * 处理一批变化
+     */
+    private ChangeBatch process(Set<Path> changed, Set<Path> overflowed, int events) {
+        long start = System.nanoTime();
+        ResourceInjector resources = modLoader.getResourceInjector();
+        
+        // 模组目录/压缩包 -> 模组配置（每批重新建立，重载后的模组使用新配置）
+        Map<Path, ModConfig> sources = new HashMap<>();
+        for (ModConfig config : modLoader.getLoadedMods().values()) {
+            if (config.getModSource() != null) {
+                sources.put(config.getModSource().toPath().toAbsolutePath().normalize(), config);
+            }
+        }
+        
+        Set<String> changedResources = new LinkedHashSet<>();
+        Set<String> reloadRequired = new TreeSet<>();
+        Set<String> unknownSources = new TreeSet<>();
+        
+        // 事件丢失的目录：重新同步该模组的全部资源
+        for (Path dir : overflowed) {
+            if (dir.equals(modsDir)) {
+                System.err.println("  [警告] mods目录事件溢出，新增或删除的模组可能未被报告");
+                continue;
+            }
+            ModConfig config = findOwner(dir, sources);
+            if (config != null && !config.isArchive()) {
+                changedResources.addAll(resources.removeResource(config.getModId(), "assets"));
+                resources.injectModResources(config, config.getModSource());
+                resources.forEachResource("assets", (path, owner) -> {
+                    if (owner == config) {
+                        changedResources.add(path);
+                    }
+                });
+            }
+        }
+        
+        for (Path path : changed) {
+            Path fileName = path.getFileName();
+            if (fileName != null && fileName.toString().startsWith(".flml")) {
+                continue; // 加载器自己写入的缓存、加载计划和解压目录
+            }
+            ModConfig config = findOwner(path, sources);
+            if (config == null) {
+                if (modsDir.equals(path.getParent())) {
+                    unknownSources.add(fileName.toString());
+                }
+                continue;
+            }
+            Path source = config.getModSource().toPath().toAbsolutePath().normalize();
+            if (path.equals(source) || config.isArchive()) {
+                reloadRequired.add(config.getModId());
+                continue;
+            }
+            String relative = source.relativize(path).toString().replace(File.separatorChar, '/');
+            if (!relative.startsWith(ASSETS_PREFIX)) {
+                reloadRequired.add(config.getModId());
+                continue;
+            }
+            updateAssets(resources, config, path, relative, changedResources);
+        }
+        
+        return new ChangeBatch(events, new ArrayList<>(changedResources), new ArrayList<>(reloadRequired),
+            new ArrayList<>(unknownSources), System.nanoTime() - start);
+    }
+    
+    /**
+     * 增量更新一个资源文件或资源目录
+     */
+    private void updateAssets(ResourceInjector resources, ModConfig config, Path path, String relative,
+                              Set<String> changedResources) {
+        if (Files.isRegularFile(path)) {
+            resources.updateResource(config, relative);
+            changedResources.add(relative); // 内容变化的文件路径不变，同样需要报告
+        } else if (Files.isDirectory(path)) {
+            try (Stream<Path> files = Files.walk(path)) {
+                files.filter(Files::isRegularFile).forEach(file -> {
+                    String resourcePath = relative + "/" + path.relativize(file).toString().replace(File.separatorChar, '/');
+                    resources.updateResource(config, resourcePath);
+                    changedResources.add(resourcePath);
+                });
+            } catch (IOException e) {
+                System.err.println("遍历资源目录失败 " + path + ": " + e.getMessage());
+            }
+        } else {
+            // 已删除：可能是文件，也可能是整个目录
+            changedResources.addAll(resources.removeResource(config.getModId(), relative));
+        }
+    }
+    
+    /**
+     * 沿父目录向上查找路径所属的模组
+     */
+    private ModConfig findOwner(Path path, Map<Path, ModConfig> sources) {
+        for (Path current = path; current != null && !current.equals(modsDir); current = current.getParent()) {
+            ModConfig config = sources.get(current);
+            if (config != null) {
+                return config;
+            }
+        }
+        return null;
+    }
+    
+    private void register(Path dir) throws IOException {
+        WatchKey key = dir.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+        watchedDirs.put(key, dir);
+    }
+    
+    /**
+     * 注册目录及其所有子目录
+     * @param created 不为null时，将其中已有的文件加入变化集合（目录是在监视期间新建的）
+     */
+    private void registerTree(Path root, Set<Path> created) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                register(dir);
+                return FileVisitResult.CONTINUE;
+            }
+            
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (created != null) {
+                    created.add(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+    
+    /**
+     * 停止监视
+     */
+    @Override
+    public void close() throws IOException {
+        running = false;
+        watchService.close();
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+    
+    /**
+     * 变化监听器
+     */
+    public interface ChangeListener {
+        void onChange(ChangeBatch batch);
+    }
+    
+    /**
+     * 一批已处理的变化
+     */
+    public static class ChangeBatch {
+        private final int eventCount;
+        private final List<String> changedResources;
+        private final List<String> reloadRequired;
+        private final List<String> unknownSources;
+        private final long processNanos;
+        
+        public ChangeBatch(int eventCount, List<String> changedResources, List<String> reloadRequired,
+                           List<String> unknownSources, long processNanos) {
+            this.eventCount = eventCount;
+            this.changedResources = changedResources;
+            this.reloadRequired = reloadRequired;
+            this.unknownSources = unknownSources;
+            this.processNanos = processNanos;
+        }
+        
+        /**
+         * 批次合并的文件系统事件数
+         */
+        public int getEventCount() {
+            return eventCount;
+        }
+        
+        /**
+         * 新增、修改或删除的资源路径（已更新到资源映射，资源缓存应据此失效）
+         */
+        public List<String> getChangedResources() {
+            return changedResources;
+        }
+        
+        /**
+         * 代码或配置发生变化、需要重载的模组ID
+         */
+        public List<String> getReloadRequired() {
+            return reloadRequired;
+        }
+        
+        /**
+         * mods目录下新增或删除的、不属于已加载模组的条目（需要重新初始化才会生效）
+         */
+        public List<String> getUnknownSources() {
+            return unknownSources;
+        }
+        
+        public long getProcessNanos() {
+            return processNanos;
+        }
+        
+        @Override
+        public String toString() {
+            return String.format("模组文件变化: %d个事件, 更新资源%d个, 需要重载%s, 新增/删除%s, 处理耗时%.1fms",
+                eventCount, changedResources.size(), reloadRequired, unknownSources, processNanos / 1e6);
+        }
+    }
+}
@@ -124,6 +124,17 @@ public class PermissionManager {
         this.requireExplicitPermission = require;
     }
     
+    /**
+     * 获取权限配置指纹（授权集合和显式权限开关），配置变化时加载计划随之失效
+     */
+    public long getConfigFingerprint() {
+        long fingerprint = requireExplicitPermission ? 1L << 63 : 0L;
+        for (Permission perm : grantedPermissions) {
+            fingerprint |= 1L << perm.ordinal();
+        }
+        return fingerprint;
+    }
+    
     /**
      * 权限检查结果
      */
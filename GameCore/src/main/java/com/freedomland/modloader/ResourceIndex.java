@@ -0,0 +1,390 @@
+package com.freedomland.modloader;
+
+import java.util.*;
+
+/**
+ * 紧凑的资源路径索引
+ * 资源路径按"/"拆分为段组织成前缀树，相同前缀的目录段只保存一份，节点用int编号（即资源ID），
+ * 所属模组用int下标保存在数组中。不保存完整路径字符串，需要时沿父节点拼出。
+ * 子节点按(父节点, 段哈希)查找，查询时直接比较路径中的字符区间，不分配子字符串。
+ * 被覆盖的候选模组按节点串成链表，同样只保存模组下标。
+ *
+ * 节点只增不删：资源被移除时只清除所属模组，节点编号保持稳定。
+ * 本类不是线程安全的：ResourceInjector的所有读写都在注入器对象上同步（synchronized）；
+ * AssetPack中的索引只在打开时构建，之后只读。
+ */
+final class ResourceIndex {
+    
+    static final int ROOT = 0;
+    static final int NONE = -1;
+    
+    // 节点数组（节点0为根）
+    private int[] parent = new int[1024];
+    private String[] name = new String[1024];
+    private int[] firstChild = new int[1024];
+    private int[] nextSibling = new int[1024];
+    private int[] owner = new int[1024]; // 所属模组下标，NONE表示不是资源（目录或已移除）
+    private int[] shadowHead = new int[1024]; // 被覆盖候选链表的第一项
+    private int nodeCount = 1;
+    private int resourceCount;
+    
+    // 被覆盖的候选（链表项）
+    private int[] shadowMod = new int[256];
+    private int[] shadowNext = new int[256];
+    private int shadowUsed;
+    private int freeShadow = NONE;
+    
+    // 子节点查找表（开放寻址）：(父节点 << 32 | 段哈希) -> 子节点，哈希相同的不同段依次探测
+    private long[] childKeys = new long[2048];
+    private int[] childValues = new int[2048];
+    private int childCount;
+    
+    ResourceIndex() {
+        Arrays.fill(childKeys, -1L);
+        parent[ROOT] = NONE;
+        firstChild[ROOT] = NONE;
+        nextSibling[ROOT] = NONE;
+        owner[ROOT] = NONE;
+        shadowHead[ROOT] = NONE;
+    }
+    
+    /**
+     * 查找路径对应的节点
+     * @return 节点ID，不存在返回NONE
+     */
+    int find(String path) {
+        int node = ROOT;
+        int start = 0;
+        int length = path.length();
+        while (start <= length) {
+            int end = path.indexOf('/', start);
+            if (end < 0) {
+                end = length;
+            }
+            if (end > start) {
+                node = childOf(node, path, start, end);
+                if (node == NONE) {
+                    return NONE;
+                }
+            }
+            start = end + 1;
+        }
+        return node;
+    }
+    
+    /**
+     * 查找或创建路径对应的节点
+     */
+    int findOrCreate(String path) {
+        int node = ROOT;
+        int start = 0;
+        int length = path.length();
+        while (start <= length) {
+            int end = path.indexOf('/', start);
+            if (end < 0) {
+                end = length;
+            }
+            if (end > start) {
+                int child = childOf(node, path, start, end);
+                node = child != NONE ? child : addChild(node, path.substring(start, end));
+            }
+            start = end + 1;
+        }
+        return node;
+    }
+    
+    /**
+     * 获取资源所属模组下标（不是资源时返回NONE）
+     */
+    int getOwner(int node) {
+        return owner[node];
+    }
+    
+    /**
+     * 设置资源所属模组下标（NONE表示移除资源）
+     */
+    void setOwner(int node, int modIndex) {
+        int previous = owner[node];
+        owner[node] = modIndex;
+        if (previous == NONE && modIndex != NONE) {
+            resourceCount++;
+        } else if (previous != NONE && modIndex == NONE) {
+            resourceCount--;
+        }
+    }
+    
+    /**
+     * 添加被覆盖的候选模组
+     */
+    void addShadowed(int node, int modIndex) {
+        int entry = freeShadow;
+        if (entry != NONE) {
+            freeShadow = shadowNext[entry];
+        } else {
+            if (shadowUsed == shadowMod.length) {
+                shadowMod = Arrays.copyOf(shadowMod, shadowUsed * 2);
+                shadowNext = Arrays.copyOf(shadowNext, shadowUsed * 2);
+            }
+            entry = shadowUsed++;
+        }
+        shadowMod[entry] = modIndex;
+        shadowNext[entry] = shadowHead[node];
+        shadowHead[node] = entry;
+    }
+    
+    /**
+     * 移除被覆盖的候选模组
+     * @return true=候选存在并已移除
+     */
+    boolean removeShadowed(int node, int modIndex) {
+        int previous = NONE;
+        for (int entry = shadowHead[node]; entry != NONE; entry = shadowNext[entry]) {
+            if (shadowMod[entry] == modIndex) {
+                if (previous == NONE) {
+                    shadowHead[node] = shadowNext[entry];
+                } else {
+                    shadowNext[previous] = shadowNext[entry];
+                }
+                shadowNext[entry] = freeShadow;
+                freeShadow = entry;
+                return true;
+            }
+            previous = entry;
+        }
+        return false;
+    }
+    
+    /**
+     * 移除满足条件的所有被覆盖候选
+     */
+    void removeShadowedIf(int node, IntCondition condition) {
+        int entry = shadowHead[node];
+        while (entry != NONE) {
+            int next = shadowNext[entry];
+            if (condition.test(shadowMod[entry])) {
+                removeShadowed(node, shadowMod[entry]);
+            }
+            entry = next;
+        }
+    }
+    
+    /**
+     * 节点第一个被覆盖候选的链表项（没有时返回NONE），配合nextShadowed和shadowedMod遍历
+     */
+    int firstShadowed(int node) {
+        return shadowHead[node];
+    }
+    
+    int nextShadowed(int entry) {
+        return shadowNext[entry];
+    }
+    
+    int shadowedMod(int entry) {
+        return shadowMod[entry];
+    }
+    
+    /**
+     * 资源数量
+     */
+    int size() {
+        return resourceCount;
+    }
+    
+    /**
+     * 节点数量（包括目录节点和已移除的资源节点）
+     */
+    int nodeCount() {
+        return nodeCount;
+    }
+    
+    /**
+     * 拼出节点的完整路径
+     */
+    String pathOf(int node) {
+        int length = 0;
+        for (int n = node; n != ROOT; n = parent[n]) {
+            length += name[n].length() + 1;
+        }
+        char[] chars = new char[Math.max(length - 1, 0)];
+        int position = chars.length;
+        for (int n = node; n != ROOT; n = parent[n]) {
+            String segment = name[n];
+            position -= segment.length();
+            segment.getChars(0, segment.length(), chars, position);
+            if (position > 0) {
+                chars[--position] = '/';
+            }
+        }
+        return new String(chars);
+    }
+    
+    /**
+     * 按深度优先顺序遍历节点下的所有资源（包括节点本身）
+     */
+    void forEach(int start, NodeVisitor visitor) {
+        if (start == NONE) {
+            return;
+        }
+        if (owner[start] != NONE) {
+            visitor.visit(start);
+        }
+        int[] stack = new int[16];
+        int top = 0;
+        int child = firstChild[start];
+        while (true) {
+            if (child != NONE) {
+                if (owner[child] != NONE) {
+                    visitor.visit(child);
+                }
+                if (top == stack.length) {
+                    stack = Arrays.copyOf(stack, top * 2);
+                }
+                stack[top++] = child;
+                child = firstChild[child];
+            } else if (top > 0) {
+                child = nextSibling[stack[--top]];
+            } else {
+                return;
+            }
+        }
+    }
+    
+    /**
+     * 返回start之后（深度优先顺序）的下一个资源节点，用于逐个迭代；没有时返回NONE
+     * @param start 起始节点（ROOT表示从头开始）
+     * @param limit 只在该节点的子树内查找
+     */
+    int nextResource(int start, int limit) {
+        int node = start;
+        while (true) {
+            if (firstChild[node] != NONE) {
+                node = firstChild[node];
+            } else {
+                while (node != limit && nextSibling[node] == NONE) {
+                    node = parent[node];
+                }
+                if (node == limit) {
+                    return NONE;
+                }
+                node = nextSibling[node];
+            }
+            if (owner[node] != NONE) {
+                return node;
+            }
+        }
+    }
+    
+    /**
+     * 清空索引
+     */
+    void clear() {
+        Arrays.fill(name, null);
+        nodeCount = 1;
+        resourceCount = 0;
+        firstChild[ROOT] = NONE;
+        shadowHead[ROOT] = NONE;
+        Arrays.fill(childKeys, -1L);
+        childCount = 0;
+        shadowUsed = 0;
+        freeShadow = NONE;
+    }
+    
+    private int addChild(int parentNode, String segment) {
+        if (nodeCount == parent.length) {
+            int capacity = nodeCount * 2;
+            parent = Arrays.copyOf(parent, capacity);
+            name = Arrays.copyOf(name, capacity);
+            firstChild = Arrays.copyOf(firstChild, capacity);
+            nextSibling = Arrays.copyOf(nextSibling, capacity);
+            owner = Arrays.copyOf(owner, capacity);
+            shadowHead = Arrays.copyOf(shadowHead, capacity);
+        }
+        int node = nodeCount++;
+        parent[node] = parentNode;
+        name[node] = segment;
+        firstChild[node] = NONE;
+        owner[node] = NONE;
+        shadowHead[node] = NONE;
+        nextSibling[node] = firstChild[parentNode];
+        firstChild[parentNode] = node;
+        
+        if ((childCount + 1) * 2 > childKeys.length) {
+            rehash(childKeys.length * 2);
+        }
+        putChild(key(parentNode, segment.hashCode()), node);
+        childCount++;
+        return node;
+    }
+    
+    /**
+     * 查找名称为path[start, end)的子节点
+     */
+    private int childOf(int parentNode, String path, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + path.charAt(i); // 与String.hashCode一致
+        }
+        long key = key(parentNode, h);
+        int length = end - start;
+        int mask = childKeys.length - 1;
+        for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+            long existing = childKeys[slot];
+            if (existing == -1L) {
+                return NONE;
+            }
+            if (existing == key) {
+                int child = childValues[slot];
+                String segment = name[child];
+                if (segment.length() == length && path.regionMatches(start, segment, 0, length)) {
+                    return child;
+                }
+            }
+        }
+    }
+    
+    private void putChild(long key, int node) {
+        int mask = childKeys.length - 1;
+        int slot = hash(key) & mask;
+        while (childKeys[slot] != -1L) {
+            slot = (slot + 1) & mask;
+        }
+        childKeys[slot] = key;
+        childValues[slot] = node;
+    }
+    
+    private void rehash(int capacity) {
+        long[] oldKeys = childKeys;
+        int[] oldValues = childValues;
+        childKeys = new long[capacity];
+        childValues = new int[capacity];
+        Arrays.fill(childKeys, -1L);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != -1L) {
+                putChild(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+    
+    private static long key(int parentNode, int segmentHash) {
+        return ((long) parentNode << 32) | (segmentHash & 0xFFFFFFFFL);
+    }
+    
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+    
+    /**
+     * 节点遍历回调
+     */
+    interface NodeVisitor {
+        void visit(int node);
+    }
+    
+    /**
+     * 模组下标条件
+     */
+    interface IntCondition {
+        boolean test(int modIndex);
+    }
+}
@@ -1,25 +1,39 @@
 package com.freedomland.modloader;
 
 import java.io.*;
-import java.nio.file.*;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 资源注入器
  * 负责将模组资源合并到游戏资源池
+ *
+ * 资源路径保存在紧凑的前缀树索引（ResourceIndex）中，所属模组保存为模组下标；
+ * 实际文件路径不保存，查询时由模组目录（或压缩包）和资源路径拼出。
+ * 所有读写都在本对象上同步。
  */
 public class ResourceInjector {
     
     private static final String ASSETS_DIR = "assets";
-    private Map<String, String> resourceMap; // 资源路径 -> 实际文件路径
-    private Map<String, ModConfig> resourceOwners; // 资源路径 -> 所属模组
+    private final ResourceIndex index = new ResourceIndex(); // 资源路径 -> 所属模组下标、被覆盖的候选（移除模组时回退）
+    private final List<ModConfig> mods = new ArrayList<>(); // 模组下标 -> 模组配置
+    private final List<String> modBases = new ArrayList<>(); // 模组下标 -> 实际路径前缀（目录模组为目录路径，压缩包模组为jar: URL前缀）
+    private final BitSet archiveMods = new BitSet(); // 压缩包模组的下标
+    private final Map<String, Integer> modIndex = new HashMap<>(); // 模组ID -> 模组下标（重载后沿用同一下标）
+    private int generation; // 每次clear()加一，使正在进行的迭代失效
+    private ModScanCache cache; // 扫描缓存（为null时每次都遍历目录）
+    private final Map<String, String[]> preparedAssets = new ConcurrentHashMap<>(); // assets目录 -> 预先遍历的资源路径
+    private volatile AssetPack assetPack; // 资源包（为null时getResource直接读取源文件）
     
     /**
      * 构造函数
      */
     public ResourceInjector() {
-        this.resourceMap = new HashMap<>();
-        this.resourceOwners = new HashMap<>();
     }
     
     /**
@@ -29,49 +43,260 @@ public class ResourceInjector {
      */
     public void injectModResources(ModConfig modConfig, File modDirectory) {
         File assetsDir = new File(modDirectory, ASSETS_DIR);
-        if (!assetsDir.exists() || !assetsDir.isDirectory()) {
+        String[] files = preparedAssets.remove(assetsDir.getAbsolutePath());
+        if (files == null) {
+            if (!assetsDir.isDirectory()) {
+                return; // 没有资源目录，跳过
+            }
+            files = cache != null ? cache.findAssets(assetsDir) : null;
+            if (files == null) {
+                files = listAssets(assetsDir);
+            }
+        }
+        injectFiles(files, modConfig, modDirectory, false);
+        System.out.println("模组资源注入成功: " + modConfig.getModId());
+    }
+    
+    /**
+     * 注入压缩包模组的资源（直接使用压缩包的条目索引，不解压）
+     * @param modConfig 模组配置
+     * @param archive 模组压缩包
+     */
+    public void injectArchiveResources(ModConfig modConfig, ModArchive archive) {
+        File archiveFile = archive.getFile();
+        String[] files = cache != null ? cache.findAssets(archiveFile) : null;
+        if (files == null) {
+            files = archive.list(ASSETS_DIR + "/").toArray(new String[0]);
+            if (cache != null) {
+                cache.putAssets(archiveFile, new String[] {""}, new long[] {archiveFile.lastModified()}, files);
+            }
+        }
+        if (files.length == 0) {
             return; // 没有资源目录，跳过
         }
         
-        try {
-            injectDirectory(assetsDir, modConfig, modDirectory);
-            System.out.println("模组资源注入成功: " + modConfig.getModId());
-        } catch (IOException e) {
-            System.err.println("注入模组资源失败 [" + modConfig.getModId() + "]: " + e.getMessage());
-            e.printStackTrace();
+        injectFiles(files, modConfig, archiveFile, true);
+        System.out.println("模组资源注入成功: " + modConfig.getModId());
+    }
+    
+    /**
+     * 遍历assets目录，返回相对模组目录的资源路径，同时记录到扫描缓存
+     */
+    private String[] listAssets(File assetsDir) {
+        AssetWalker.Listing listing = AssetWalker.walk(assetsDir);
+        if (listing == null) {
+            return new String[0];
+        }
+        if (cache != null) {
+            cache.putAssets(assetsDir, listing.dirs, listing.dirModified, listing.files);
         }
+        return listing.files;
     }
     
     /**
-     * 递归注入目录资源
+     * 预先并行遍历多个模组的assets目录（模组之间、子目录之间都并行），结果留给随后的injectModResources使用
+     * 注入仍按加载顺序逐个模组合并，覆盖关系只由shouldOverride决定，与遍历完成的先后无关
+     * @param modDirectories 模组目录
      */
-    private void injectDirectory(File directory, ModConfig modConfig, File modBaseDir) throws IOException {
-        File[] files = directory.listFiles();
-        if (files == null) {
-            return;
+    public void prepareModResources(Collection<File> modDirectories) {
+        List<File> toWalk = new ArrayList<>();
+        for (File modDirectory : modDirectories) {
+            File assetsDir = new File(modDirectory, ASSETS_DIR);
+            String[] files = cache != null ? cache.findAssets(assetsDir) : null;
+            if (files != null) {
+                preparedAssets.put(assetsDir.getAbsolutePath(), files);
+            } else {
+                toWalk.add(assetsDir);
+            }
         }
         
-        for (File file : files) {
-            if (file.isDirectory()) {
-                injectDirectory(file, modConfig, modBaseDir);
-            } else {
-                String relativePath = getRelativePath(file, modBaseDir);
-                String resourcePath = relativePath.replace(File.separator, "/");
-                
-                // 检查资源是否已存在（按优先级覆盖）
-                if (resourceMap.containsKey(resourcePath)) {
-                    ModConfig existingOwner = resourceOwners.get(resourcePath);
-                    // 如果当前模组优先级更高，则覆盖
-                    if (shouldOverride(existingOwner, modConfig)) {
-                        resourceMap.put(resourcePath, file.getAbsolutePath());
-                        resourceOwners.put(resourcePath, modConfig);
-                    }
-                } else {
-                    resourceMap.put(resourcePath, file.getAbsolutePath());
-                    resourceOwners.put(resourcePath, modConfig);
-                }
+        long start = System.nanoTime();
+        Map<File, AssetWalker.Listing> listings = AssetWalker.walkAll(toWalk);
+        int fileCount = 0;
+        for (Map.Entry<File, AssetWalker.Listing> entry : listings.entrySet()) {
+            AssetWalker.Listing listing = entry.getValue();
+            if (cache != null) {
+                cache.putAssets(entry.getKey(), listing.dirs, listing.dirModified, listing.files);
+            }
+            preparedAssets.put(entry.getKey().getAbsolutePath(), listing.files);
+            fileCount += listing.files.length;
+        }
+        if (!listings.isEmpty()) {
+            System.out.println(String.format("并行遍历资源目录: %d个模组, %d个文件, 耗时%.1fms",
+                listings.size(), fileCount, (System.nanoTime() - start) / 1e6));
+        }
+    }
+    
+    /**
+     * 丢弃未被使用的预遍历结果（未通过权限校验或加载失败的模组）
+     */
+    public void clearPreparedResources() {
+        preparedAssets.clear();
+    }
+    
+    /**
+     * 注入一个模组的资源文件（覆盖判断与写入需原子执行）
+     */
+    private synchronized void injectFiles(String[] resourcePaths, ModConfig modConfig, File source, boolean archive) {
+        int mod = modSlot(modConfig, source, archive);
+        for (String resourcePath : resourcePaths) {
+            injectFile(index.findOrCreate(resourcePath), mod);
+        }
+    }
+    
+    /**
+     * 注入单个资源
+     */
+    private void injectFile(int node, int mod) {
+        // 检查资源是否已存在（按优先级覆盖）
+        int existing = index.getOwner(node);
+        if (existing == ResourceIndex.NONE) {
+            index.setOwner(node, mod);
+        } else if (shouldOverride(mods.get(existing), mods.get(mod))) {
+            // 如果当前模组优先级更高，则覆盖；落选的一方记录下来，供移除模组时回退
+            index.addShadowed(node, existing);
+            index.setOwner(node, mod);
+        } else {
+            index.addShadowed(node, mod);
+        }
+    }
+    
+    /**
+     * 获取模组下标，同时更新模组配置和实际路径前缀（重载的模组使用新配置）
+     */
+    private int modSlot(ModConfig modConfig, File source, boolean archive) {
+        if (source == null) {
+            source = new File("mods", modConfig.getModId());
+        }
+        String base = archive ? "jar:" + source.toURI() + "!/" : source.getAbsolutePath() + File.separator;
+        Integer mod = modIndex.get(modConfig.getModId());
+        if (mod == null) {
+            mod = mods.size();
+            modIndex.put(modConfig.getModId(), mod);
+            mods.add(modConfig);
+            modBases.add(base);
+        } else {
+            mods.set(mod, modConfig);
+            modBases.set(mod, base);
+        }
+        archiveMods.set(mod, archive);
+        return mod;
+    }
+    
+    /**
+     * 移除指定模组的所有资源（模组重载时调用）
+     * 被移除模组覆盖的资源回退到其余模组中优先级最高的候选
+     * @param modIds 模组ID
+     * @return 移除的资源数
+     */
+    public synchronized int removeModResources(Set<String> modIds) {
+        BitSet removedMods = new BitSet();
+        for (String modId : modIds) {
+            Integer mod = modIndex.get(modId);
+            if (mod != null) {
+                removedMods.set(mod);
+            }
+        }
+        if (removedMods.isEmpty()) {
+            return 0;
+        }
+        AssetPack pack = assetPack;
+        if (pack != null) {
+            for (String modId : modIds) {
+                pack.invalidateMod(modId); // 重载后的文件内容可能已变化
+            }
+        }
+        
+        int removed = 0;
+        for (int node = 1; node < index.nodeCount(); node++) {
+            int owner = index.getOwner(node);
+            if (owner == ResourceIndex.NONE) {
+                continue;
+            }
+            index.removeShadowedIf(node, removedMods::get);
+            if (removedMods.get(owner)) {
+                removed++;
+                index.setOwner(node, takeBestShadowed(node));
             }
         }
+        return removed;
+    }
+    
+    /**
+     * 新增或更新模组的单个资源（文件监视器调用）
+     * @param modConfig 模组配置
+     * @param resourcePath 资源路径（如 "assets/textures/stone.png"）
+     * @return true=资源映射发生变化
+     */
+    public synchronized boolean updateResource(ModConfig modConfig, String resourcePath) {
+        AssetPack pack = assetPack;
+        if (pack != null) {
+            pack.invalidate(resourcePath); // 路径不变时内容也可能变化
+        }
+        int mod = modSlot(modConfig, modConfig.getModSource(), modConfig.isArchive());
+        int node = index.findOrCreate(resourcePath);
+        if (index.getOwner(node) == mod) {
+            return false;
+        }
+        for (int entry = index.firstShadowed(node); entry != ResourceIndex.NONE; entry = index.nextShadowed(entry)) {
+            if (index.shadowedMod(entry) == mod) {
+                return false; // 已作为被覆盖的候选记录
+            }
+        }
+        injectFile(node, mod);
+        return index.getOwner(node) == mod;
+    }
+    
+    /**
+     * 移除模组的单个资源或资源目录下的所有资源（文件监视器调用）
+     * 被移除的资源回退到其他模组中优先级最高的候选
+     * @param modId 模组ID
+     * @param resourcePath 资源路径或资源目录（如 "assets/textures"）
+     * @return 移除的资源路径
+     */
+    public synchronized List<String> removeResource(String modId, String resourcePath) {
+        List<String> removed = new ArrayList<>();
+        Integer mod = modIndex.get(modId);
+        if (mod == null) {
+            return removed;
+        }
+        // 单个文件或整个目录：遍历该节点下的所有资源
+        index.forEach(index.find(resourcePath), node -> removeOwned(mod, node, removed));
+        return removed;
+    }
+    
+    /**
+     * 移除模组对单个资源的占有：是当前所有者时回退到其他候选，是被覆盖的候选时从候选中删除
+     */
+    private void removeOwned(int mod, int node, List<String> removed) {
+        index.removeShadowed(node, mod);
+        if (index.getOwner(node) != mod) {
+            return;
+        }
+        String path = index.pathOf(node);
+        removed.add(path);
+        index.setOwner(node, takeBestShadowed(node));
+        AssetPack pack = assetPack;
+        if (pack != null) {
+            pack.invalidate(path);
+        }
+    }
+    
+    /**
+     * 取出资源被覆盖的候选中优先级最高的一个（没有候选时返回NONE）
+     */
+    private int takeBestShadowed(int node) {
+        int best = ResourceIndex.NONE;
+        for (int entry = index.firstShadowed(node); entry != ResourceIndex.NONE; entry = index.nextShadowed(entry)) {
+            int candidate = index.shadowedMod(entry);
+            if (best == ResourceIndex.NONE || shouldOverride(mods.get(best), mods.get(candidate))) {
+                best = candidate;
+            }
+        }
+        if (best != ResourceIndex.NONE) {
+            index.removeShadowed(node, best);
+        }
+        return best;
     }
     
     /**
@@ -90,47 +315,261 @@ public class ResourceInjector {
     }
     
     /**
-     * 获取相对路径
+     * 获取资源文件路径
+     * @param resourcePath 资源路径（如 "textures/blocks/stone.png"）
+     * @return 实际文件路径（压缩包模组为jar: URL），如果不存在返回null
      */
-    private String getRelativePath(File file, File baseDir) {
+    public synchronized String getResourcePath(String resourcePath) {
+        int node = index.find(resourcePath);
+        int owner = node != ResourceIndex.NONE ? index.getOwner(node) : ResourceIndex.NONE;
+        if (owner == ResourceIndex.NONE) {
+            return null;
+        }
+        String base = modBases.get(owner);
+        return archiveMods.get(owner) ? base + resourcePath : base + resourcePath.replace('/', File.separatorChar);
+    }
+    
+    /**
+     * 获取资源内容
+     * 设置了资源包时直接返回映射内存的只读切片（不复制）；资源不在包中或已失效时读取源文件
+     * @param resourcePath 资源路径（如 "assets/textures/blocks/stone.png"）
+     * @return 只读的资源内容，如果不存在或读取失败返回null
+     */
+    public ByteBuffer getResource(String resourcePath) {
+        ModConfig owner;
+        String actualPath;
+        synchronized (this) {
+            owner = getResourceOwner(resourcePath);
+            actualPath = getResourcePath(resourcePath);
+        }
+        if (owner == null) {
+            return null;
+        }
+        AssetPack pack = assetPack;
+        if (pack != null) {
+            ByteBuffer content = pack.get(resourcePath, owner);
+            if (content != null) {
+                return content;
+            }
+        }
         try {
-            Path filePath = file.toPath();
-            Path basePath = baseDir.toPath();
-            return basePath.relativize(filePath).toString();
-        } catch (Exception e) {
-            return file.getName();
+            byte[] content;
+            if (actualPath.startsWith("jar:")) {
+                URLConnection connection = new URL(actualPath).openConnection();
+                connection.setUseCaches(false); // 不缓存打开的压缩包，模组重载时可以替换文件
+                try (InputStream in = connection.getInputStream()) {
+                    content = in.readAllBytes();
+                }
+            } else {
+                content = Files.readAllBytes(Paths.get(actualPath));
+            }
+            return ByteBuffer.wrap(content).asReadOnlyBuffer();
+        } catch (IOException e) {
+            System.err.println("读取资源失败 " + resourcePath + ": " + e.getMessage());
+            return null;
         }
     }
     
     /**
-     * 获取资源文件路径
-     * @param resourcePath 资源路径（如 "textures/blocks/stone.png"）
-     * @return 实际文件路径，如果不存在返回null
+     * 设置资源包（null表示不使用资源包）
+     */
+    public void setAssetPack(AssetPack assetPack) {
+        this.assetPack = assetPack;
+    }
+    
+    /**
+     * 获取当前使用的资源包（未使用时返回null）
      */
-    public String getResourcePath(String resourcePath) {
-        return resourceMap.get(resourcePath);
+    public AssetPack getAssetPack() {
+        return assetPack;
+    }
+    
+    /**
+     * 获取资源所属的模组
+     * @return 模组配置，如果资源不存在返回null
+     */
+    public synchronized ModConfig getResourceOwner(String resourcePath) {
+        int node = index.find(resourcePath);
+        int owner = node != ResourceIndex.NONE ? index.getOwner(node) : ResourceIndex.NONE;
+        return owner != ResourceIndex.NONE ? mods.get(owner) : null;
     }
     
     /**
      * 检查资源是否存在
      */
-    public boolean hasResource(String resourcePath) {
-        return resourceMap.containsKey(resourcePath);
+    public synchronized boolean hasResource(String resourcePath) {
+        int node = index.find(resourcePath);
+        return node != ResourceIndex.NONE && index.getOwner(node) != ResourceIndex.NONE;
+    }
+    
+    /**
+     * 获取资源数量
+     */
+    public synchronized int getResourceCount() {
+        return index.size();
     }
     
     /**
      * 获取所有资源路径
+     * 返回只读视图，不复制路径；迭代时逐个拼出路径，期间注入或移除的资源可能看得到也可能看不到，
+     * 调用clear()后继续迭代会抛出ConcurrentModificationException
      */
     public Set<String> getAllResourcePaths() {
-        return new HashSet<>(resourceMap.keySet());
+        return new AbstractSet<String>() {
+            @Override
+            public Iterator<String> iterator() {
+                return new ResourceIterator(ResourceIndex.ROOT);
+            }
+            
+            @Override
+            public int size() {
+                return getResourceCount();
+            }
+            
+            @Override
+            public boolean contains(Object o) {
+                return o instanceof String && hasResource((String) o);
+            }
+        };
+    }
+    
+    /**
+     * 列出目录下的所有资源路径
+     * @param directory 资源目录（如 "assets/textures"），空字符串表示全部
+     */
+    public synchronized List<String> listResources(String directory) {
+        List<String> paths = new ArrayList<>();
+        index.forEach(index.find(directory), node -> paths.add(index.pathOf(node)));
+        return paths;
+    }
+    
+    /**
+     * 遍历目录下的所有资源及其所属模组（回调中不能修改资源）
+     * @param directory 资源目录（如 "assets/textures"），空字符串表示全部
+     * @param consumer (资源路径, 所属模组)
+     */
+    public synchronized void forEachResource(String directory, ResourceConsumer consumer) {
+        index.forEach(index.find(directory), node -> consumer.accept(index.pathOf(node), mods.get(index.getOwner(node))));
+    }
+    
+    /**
+     * 恢复加载计划中保存的资源映射（覆盖关系已在保存时确定）
+     * @param resourcePaths 资源路径
+     * @param owners 所属模组
+     */
+    public synchronized void restore(String[] resourcePaths, ModConfig[] owners) {
+        Map<ModConfig, Integer> slots = new IdentityHashMap<>();
+        for (int i = 0; i < resourcePaths.length; i++) {
+            int mod = slots.computeIfAbsent(owners[i],
+                config -> modSlot(config, config.getModSource(), config.isArchive()));
+            index.setOwner(index.findOrCreate(resourcePaths[i]), mod);
+        }
+    }
+    
+    /**
+     * 恢复加载计划中保存的被覆盖资源
+     * @param resourcePaths 资源路径
+     * @param owners 所属模组
+     */
+    public synchronized void restoreShadowed(String[] resourcePaths, ModConfig[] owners) {
+        Map<ModConfig, Integer> slots = new IdentityHashMap<>();
+        for (int i = 0; i < resourcePaths.length; i++) {
+            int mod = slots.computeIfAbsent(owners[i],
+                config -> modSlot(config, config.getModSource(), config.isArchive()));
+            index.addShadowed(index.findOrCreate(resourcePaths[i]), mod);
+        }
+    }
+    
+    /**
+     * 遍历被覆盖的资源（供保存加载计划）
+     * @param consumer (资源路径, 所属模组)
+     */
+    synchronized void forEachShadowed(ResourceConsumer consumer) {
+        for (int node = 1; node < index.nodeCount(); node++) {
+            int entry = index.firstShadowed(node);
+            if (entry == ResourceIndex.NONE) {
+                continue;
+            }
+            String path = index.pathOf(node);
+            for (; entry != ResourceIndex.NONE; entry = index.nextShadowed(entry)) {
+                consumer.accept(path, mods.get(index.shadowedMod(entry)));
+            }
+        }
+    }
+    
+    /**
+     * 设置扫描缓存（null表示不使用缓存）
+     */
+    public void setScanCache(ModScanCache cache) {
+        this.cache = cache;
     }
     
     /**
      * 清除所有注入的资源
      */
-    public void clear() {
-        resourceMap.clear();
-        resourceOwners.clear();
+    public synchronized void clear() {
+        index.clear();
+        mods.clear();
+        modBases.clear();
+        archiveMods.clear();
+        modIndex.clear();
+        generation++;
+        assetPack = null;
+    }
+    
+    /**
+     * 资源路径迭代器：按前缀树深度优先顺序逐个取出资源，每一步在注入器上同步
+     */
+    private final class ResourceIterator implements Iterator<String> {
+        private final int root;
+        private final int expectedGeneration;
+        private int current;
+        private int next = ResourceIndex.NONE;
+        private boolean done;
+        
+        ResourceIterator(int root) {
+            this.root = root;
+            this.current = root;
+            synchronized (ResourceInjector.this) {
+                this.expectedGeneration = generation;
+            }
+        }
+        
+        @Override
+        public boolean hasNext() {
+            synchronized (ResourceInjector.this) {
+                checkGeneration();
+                if (next == ResourceIndex.NONE && !done) {
+                    next = index.nextResource(current, root);
+                    done = next == ResourceIndex.NONE;
+                }
+                return next != ResourceIndex.NONE;
+            }
+        }
+        
+        @Override
+        public String next() {
+            synchronized (ResourceInjector.this) {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                current = next;
+                next = ResourceIndex.NONE;
+                return index.pathOf(current);
+            }
+        }
+        
+        private void checkGeneration() {
+            if (generation != expectedGeneration) {
+                throw new ConcurrentModificationException();
+            }
+        }
+    }
+    
+    /**
+     * 资源遍历回调
+     */
+    public interface ResourceConsumer {
+        void accept(String resourcePath, ModConfig owner);
     }
 }
-
@@ -0,0 +1,191 @@
+package com.freedomland.modloader;
+
+import java.util.Arrays;
+
+/**
+ * 语义化版本号（major.minor.patch[-prerelease][+build]）
+ * 解析一次后以整数比较，按语义化版本规范定义先后顺序（build元数据不参与比较）
+ */
+public final class SemanticVersion implements Comparable<SemanticVersion> {
+    
+    private final int major;
+    private final int minor;
+    private final int patch;
+    private final String[] preRelease; // 预发布标识（为空表示正式版）
+    
+    public SemanticVersion(int major, int minor, int patch) {
+        this(major, minor, patch, new String[0]);
+    }
+    
+    private SemanticVersion(int major, int minor, int patch, String[] preRelease) {
+        this.major = major;
+        this.minor = minor;
+        this.patch = patch;
+        this.preRelease = preRelease;
+    }
+    
+    /**
+     * 解析版本号（允许前缀"v"，允许省略minor和patch，如 "1.2" 视为 "1.2.0"）
+     * @throws IllegalArgumentException 格式错误时抛出
+     */
+    public static SemanticVersion parse(String text) {
+        SemanticVersion version = tryParse(text);
+        if (version == null) {
+            throw new IllegalArgumentException("无效的版本号: " + text);
+        }
+        return version;
+    }
+    
+    /**
+     * 解析版本号
+     * @return 版本号，格式错误返回null
+     */
+    public static SemanticVersion tryParse(String text) {
+        if (text == null) {
+            return null;
+        }
+        String s = text.trim();
+        if (s.startsWith("v") || s.startsWith("V")) {
+            s = s.substring(1);
+        }
+        int plus = s.indexOf('+');
+        if (plus >= 0) {
+            s = s.substring(0, plus);
+        }
+        String[] pre = new String[0];
+        int dash = s.indexOf('-');
+        if (dash >= 0) {
+            String preText = s.substring(dash + 1);
+            if (preText.isEmpty()) {
+                return null;
+            }
+            pre = preText.split("\\.", -1);
+            for (String id : pre) {
+                if (id.isEmpty()) {
+                    return null;
+                }
+            }
+            s = s.substring(0, dash);
+        }
+        String[] parts = s.split("\\.", -1);
+        if (parts.length > 3) {
+            return null;
+        }
+        int[] numbers = new int[3];
+        for (int i = 0; i < parts.length; i++) {
+            int value = parseNumber(parts[i]);
+            if (value < 0) {
+                return null;
+            }
+            numbers[i] = value;
+        }
+        return new SemanticVersion(numbers[0], numbers[1], numbers[2], pre);
+    }
+    
+    /**
+     * 解析非负整数
+     * @return 数值，不是数字返回-1
+     */
+    static int parseNumber(String text) {
+        if (text.isEmpty() || text.length() > 9) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+    
+    public int getMajor() {
+        return major;
+    }
+    
+    public int getMinor() {
+        return minor;
+    }
+    
+    public int getPatch() {
+        return patch;
+    }
+    
+    /**
+     * 是否为预发布版本
+     */
+    public boolean isPreRelease() {
+        return preRelease.length > 0;
+    }
+    
+    @Override
+    public int compareTo(SemanticVersion other) {
+        int cmp = Integer.compare(major, other.major);
+        if (cmp != 0) {
+            return cmp;
+        }
+        cmp = Integer.compare(minor, other.minor);
+        if (cmp != 0) {
+            return cmp;
+        }
+        cmp = Integer.compare(patch, other.patch);
+        if (cmp != 0) {
+            return cmp;
+        }
+        // 正式版高于任何预发布版本
+        if (preRelease.length == 0) {
+            return other.preRelease.length == 0 ? 0 : 1;
+        }
+        if (other.preRelease.length == 0) {
+            return -1;
+        }
+        for (int i = 0; i < Math.min(preRelease.length, other.preRelease.length); i++) {
+            cmp = comparePreRelease(preRelease[i], other.preRelease[i]);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return Integer.compare(preRelease.length, other.preRelease.length);
+    }
+    
+    /**
+     * 比较单个预发布标识（数字按数值比较且低于字母标识）
+     */
+    private static int comparePreRelease(String a, String b) {
+        int na = parseNumber(a);
+        int nb = parseNumber(b);
+        if (na >= 0 && nb >= 0) {
+            return Integer.compare(na, nb);
+        }
+        if (na >= 0) {
+            return -1;
+        }
+        if (nb >= 0) {
+            return 1;
+        }
+        return a.compareTo(b);
+    }
+    
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof SemanticVersion)) {
+            return false;
+        }
+        SemanticVersion other = (SemanticVersion) o;
+        return major == other.major && minor == other.minor && patch == other.patch &&
+            Arrays.equals(preRelease, other.preRelease);
+    }
+    
+    @Override
+    public int hashCode() {
+        return ((major * 31 + minor) * 31 + patch) * 31 + Arrays.hashCode(preRelease);
+    }
+    
+    @Override
+    public String toString() {
+        String base = major + "." + minor + "." + patch;
+        return preRelease.length == 0 ? base : base + "-" + String.join(".", preRelease);
+    }
+}
@@ -0,0 +1,428 @@
+package com.freedomland.modloader;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * 共享依赖库管理器
+ * 多个模组在lib/中携带内容相同的JAR（按SHA-256判断）时，由一个公共的父加载器只加载一次，
+ * 避免同一批类在Metaspace中存在多份、各自进行JIT预热。
+ *
+ * 共享条件：
+ * - 至少两个模组使用内容相同的JAR
+ * - 该JAR中的包没有出现在任何内容不同的JAR中（同一个库的不同版本各自留在模组的类加载器中，互不影响）
+ * - 使用该JAR的每个模组，其lib/中的其他JAR也都能共享。共享加载器看不到模组类加载器中的类，
+ *   库之间的依赖关系（如guava依赖failureaccess）无从得知，因此只要有一个JAR留在模组中，
+ *   通过共同使用的JAR连在一起的所有模组的依赖JAR都保持隔离
+ */
+public class SharedLibraryManager implements Closeable {
+    
+    private final ClassLoader parent;
+    private SharedLibraryLoader loader; // 没有共享库时为null
+    private final Set<File> sharedFiles = new HashSet<>(); // 被共享的JAR（包括各模组中的副本）
+    private final List<URL> sharedUrls = new ArrayList<>(); // 共享加载器的类路径（每个内容一份）
+    private final List<Integer> sharedUsers = new ArrayList<>(); // 与sharedUrls对应，使用该JAR的模组数
+    
+    // 统计
+    private int jarReferences;
+    private int uniqueJars;
+    private int isolatedJars;
+    private long metaspaceBefore = -1;
+    
+    /**
+     * 构造函数
+     * @param parent 共享加载器的父加载器
+     */
+    public SharedLibraryManager(ClassLoader parent) {
+        this.parent = parent;
+    }
+    
+    /**
+     * 分析各模组的依赖JAR，确定共享的JAR并创建共享加载器
+     * @param modLibs 模组ID -> 该模组的依赖JAR
+     */
+    public void prepare(Map<String, List<File>> modLibs) {
+        close();
+        metaspaceBefore = getMetaspaceUsed();
+        
+        // 1. 按内容哈希分组
+        Map<String, List<File>> byHash = new LinkedHashMap<>();
+        Map<String, Set<String>> usersByHash = new HashMap<>();
+        Set<String> unreadableMods = new HashSet<>(); // 有JAR读取失败（只能留在模组中）的模组
+        List<String> modIds = new ArrayList<>(modLibs.keySet());
+        Collections.sort(modIds);
+        for (String modId : modIds) {
+            for (File jar : modLibs.get(modId)) {
+                try {
+                    String hash = sha256(jar);
+                    byHash.computeIfAbsent(hash, k -> new ArrayList<>()).add(jar.getAbsoluteFile());
+                    usersByHash.computeIfAbsent(hash, k -> new HashSet<>()).add(modId);
+                    jarReferences++;
+                } catch (IOException e) {
+                    unreadableMods.add(modId);
+                    System.err.println("  [警告] 读取依赖JAR失败，不参与共享: " + jar + ": " + e.getMessage());
+                }
+            }
+        }
+        uniqueJars = byHash.size();
+        
+        // 2. 统计每个包出现在哪些不同内容的JAR中
+        Map<String, Set<String>> packages = new HashMap<>();
+        Map<String, Set<String>> packageOwners = new HashMap<>();
+        for (Map.Entry<String, List<File>> entry : byHash.entrySet()) {
+            Set<String> jarPackages = listPackages(entry.getValue().get(0));
+            packages.put(entry.getKey(), jarPackages);
+            for (String pkg : jarPackages) {
+                packageOwners.computeIfAbsent(pkg, k -> new HashSet<>()).add(entry.getKey());
+            }
+        }
+        
+        // 3. 被多个模组使用、且包不与其他版本冲突的JAR作为共享候选
+        Set<String> candidates = new HashSet<>();
+        Set<String> conflicts = new HashSet<>();
+        for (Map.Entry<String, List<File>> entry : byHash.entrySet()) {
+            String hash = entry.getKey();
+            if (usersByHash.get(hash).size() < 2) {
+                continue;
+            }
+            boolean conflict = false;
+            for (String pkg : packages.get(hash)) {
+                if (packageOwners.get(pkg).size() > 1) {
+                    conflict = true;
+                    break;
+                }
+            }
+            if (conflict) {
+                conflicts.add(hash);
+                isolatedJars++;
+                System.out.println("  依赖JAR存在不同版本，保持隔离: " + entry.getValue().get(0).getName());
+            } else {
+                candidates.add(hash);
+            }
+        }
+        
+        // 4. 模组有任何依赖JAR不能共享时，它使用的候选JAR也留在模组中，反复排除直到稳定
+        Map<String, Set<String>> hashesByMod = new HashMap<>();
+        for (Map.Entry<String, Set<String>> entry : usersByHash.entrySet()) {
+            for (String modId : entry.getValue()) {
+                hashesByMod.computeIfAbsent(modId, k -> new HashSet<>()).add(entry.getKey());
+            }
+        }
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Map.Entry<String, Set<String>> entry : hashesByMod.entrySet()) {
+                Set<String> modHashes = entry.getValue();
+                boolean isolated = unreadableMods.contains(entry.getKey()) || !candidates.containsAll(modHashes);
+                if (isolated && candidates.removeAll(modHashes)) {
+                    changed = true;
+                }
+            }
+        }
+        
+        // 5. 剩下的候选JAR进入共享加载器
+        for (Map.Entry<String, List<File>> entry : byHash.entrySet()) {
+            String hash = entry.getKey();
+            int users = usersByHash.get(hash).size();
+            if (!candidates.contains(hash)) {
+                if (users >= 2 && !conflicts.contains(hash)) {
+                    isolatedJars++;
+                    System.out.println("  依赖JAR所在模组有不能共享的依赖，保持隔离: " + entry.getValue().get(0).getName());
+                }
+                continue;
+            }
+            try {
+                sharedUrls.add(entry.getValue().get(0).toURI().toURL());
+                sharedUsers.add(users);
+                sharedFiles.addAll(entry.getValue());
+            } catch (MalformedURLException e) {
+                // 本地文件的URL不会出错
+            }
+        }
+        
+        if (!sharedUrls.isEmpty()) {
+            loader = new SharedLibraryLoader(sharedUrls.toArray(new URL[0]), parent);
+        }
+    }
+    
+    /**
+     * 按加载计划中保存的结果恢复共享加载器
+     * @param urls 共享JAR
+     * @param users 与urls对应，使用该JAR的模组数
+     * @param counts 保存计划时的统计：{引用数, 不同JAR数, 隔离JAR数}
+     */
+    void restore(List<URL> urls, List<Integer> users, int[] counts) {
+        close();
+        metaspaceBefore = getMetaspaceUsed();
+        jarReferences = counts[0];
+        uniqueJars = counts[1];
+        isolatedJars = counts[2];
+        sharedUrls.addAll(urls);
+        sharedUsers.addAll(users);
+        if (!sharedUrls.isEmpty()) {
+            loader = new SharedLibraryLoader(sharedUrls.toArray(new URL[0]), parent);
+        }
+    }
+    
+    /**
+     * 获取模组类加载器的父加载器（有共享库时为共享加载器）
+     */
+    public ClassLoader getLoader() {
+        return loader != null ? loader : parent;
+    }
+    
+    /**
+     * 检查JAR是否由共享加载器加载（模组类加载器应跳过它）
+     */
+    public boolean isShared(File jar) {
+        return sharedFiles.contains(jar.getAbsoluteFile());
+    }
+    
+    /**
+     * 获取被共享的JAR文件，包括各模组中的副本（供保存加载计划）
+     */
+    Set<File> getSharedFiles() {
+        return Collections.unmodifiableSet(sharedFiles);
+    }
+    
+    /**
+     * 获取共享JAR（供保存加载计划）
+     */
+    List<URL> getSharedUrls() {
+        return Collections.unmodifiableList(sharedUrls);
+    }
+    
+    /**
+     * 获取共享JAR的使用模组数（供保存加载计划）
+     */
+    List<Integer> getSharedUsers() {
+        return Collections.unmodifiableList(sharedUsers);
+    }
+    
+    /**
+     * 获取统计信息
+     */
+    public SharedLibraryStats getStats() {
+        long avoided = 0;
+        int sharedClasses = 0;
+        if (loader != null) {
+            for (int i = 0; i < sharedUrls.size(); i++) {
+                int defined = loader.getDefinedCount(sharedUrls.get(i));
+                sharedClasses += defined;
+                avoided += (long) defined * (sharedUsers.get(i) - 1);
+            }
+        }
+        return new SharedLibraryStats(jarReferences, uniqueJars, sharedUrls.size(), isolatedJars,
+            sharedClasses, avoided, metaspaceBefore, getMetaspaceUsed());
+    }
+    
+    /**
+     * 当前Metaspace已用字节数（JVM不提供时返回-1）
+     */
+    public static long getMetaspaceUsed() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if ("Metaspace".equals(pool.getName())) {
+                return pool.getUsage().getUsed();
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * 计算文件的SHA-256
+     */
+    private static String sha256(File file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        byte[] buffer = new byte[65536];
+        try (InputStream in = new FileInputStream(file)) {
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, n);
+            }
+        }
+        StringBuilder sb = new StringBuilder(64);
+        for (byte b : digest.digest()) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+    
+    /**
+     * 列出JAR中包含类文件的包（忽略META-INF下的多版本类和module-info）
+     */
+    private static Set<String> listPackages(File jar) {
+        Set<String> packages = new HashSet<>();
+        try (JarFile jarFile = new JarFile(jar)) {
+            Enumeration<JarEntry> entries = jarFile.entries();
+            while (entries.hasMoreElements()) {
+                String name = entries.nextElement().getName();
+                if (!name.endsWith(".class") || name.startsWith("META-INF/") || name.endsWith("module-info.class")) {
+                    continue;
+                }
+                int slash = name.lastIndexOf('/');
+                packages.add(slash < 0 ? "" : name.substring(0, slash).replace('/', '.'));
+            }
+        } catch (IOException e) {
+            System.err.println("  [警告] 无法读取依赖JAR: " + jar + ": " + e.getMessage());
+        }
+        return packages;
+    }
+    
+    /**
+     * 关闭共享加载器
+     */
+    @Override
+    public void close() {
+        if (loader != null) {
+            try {
+                loader.close();
+            } catch (IOException e) {
+                System.err.println("关闭共享依赖库加载器失败: " + e.getMessage());
+            }
+            loader = null;
+        }
+        sharedFiles.clear();
+        sharedUrls.clear();
+        sharedUsers.clear();
+        jarReferences = 0;
+        uniqueJars = 0;
+        isolatedJars = 0;
+    }
+    
+    /**
+     * 共享依赖库的类加载器，记录每个JAR定义的类数
+     */
+    private static final class SharedLibraryLoader extends URLClassLoader {
+        
+        static {
+            registerAsParallelCapable();
+        }
+        
+        private final Map<String, AtomicInteger> definedCounts = new ConcurrentHashMap<>();
+        
+        SharedLibraryLoader(URL[] urls, ClassLoader parent) {
+            super("FLML-SharedLibs", urls, parent);
+        }
+        
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            Class<?> clazz = super.findClass(name);
+            if (clazz.getProtectionDomain().getCodeSource() != null) {
+                String location = clazz.getProtectionDomain().getCodeSource().getLocation().toString();
+                definedCounts.computeIfAbsent(location, k -> new AtomicInteger()).incrementAndGet();
+            }
+            return clazz;
+        }
+        
+        int getDefinedCount(URL url) {
+            AtomicInteger count = definedCounts.get(url.toString());
+            return count != null ? count.get() : 0;
+        }
+    }
+    
+    /**
+     * 共享依赖库统计
+     */
+    public static class SharedLibraryStats {
+        private final int jarReferences;
+        private final int uniqueJars;
+        private final int sharedJars;
+        private final int isolatedJars;
+        private final int sharedClasses;
+        private final long duplicateClassesAvoided;
+        private final long metaspaceBefore;
+        private final long metaspaceAfter;
+        
+        public SharedLibraryStats(int jarReferences, int uniqueJars, int sharedJars, int isolatedJars,
+                                  int sharedClasses, long duplicateClassesAvoided,
+                                  long metaspaceBefore, long metaspaceAfter) {
+            this.jarReferences = jarReferences;
+            this.uniqueJars = uniqueJars;
+            this.sharedJars = sharedJars;
+            this.isolatedJars = isolatedJars;
+            this.sharedClasses = sharedClasses;
+            this.duplicateClassesAvoided = duplicateClassesAvoided;
+            this.metaspaceBefore = metaspaceBefore;
+            this.metaspaceAfter = metaspaceAfter;
+        }
+        
+        /**
+         * 所有模组引用的依赖JAR数（含重复）
+         */
+        public int getJarReferences() {
+            return jarReferences;
+        }
+        
+        /**
+         * 内容不同的依赖JAR数
+         */
+        public int getUniqueJars() {
+            return uniqueJars;
+        }
+        
+        /**
+         * 由共享加载器加载的JAR数
+         */
+        public int getSharedJars() {
+            return sharedJars;
+        }
+        
+        /**
+         * 被多个模组使用但因版本冲突或所在模组有不能共享的依赖而保持隔离的JAR数
+         */
+        public int getIsolatedJars() {
+            return isolatedJars;
+        }
+        
+        /**
+         * 共享加载器已定义的类数
+         */
+        public int getSharedClasses() {
+            return sharedClasses;
+        }
+        
+        /**
+         * 避免的重复类定义数（每个共享类 ×（使用模组数 - 1））
+         */
+        public long getDuplicateClassesAvoided() {
+            return duplicateClassesAvoided;
+        }
+        
+        /**
+         * 准备共享库前的Metaspace已用字节数（JVM不提供时为-1）
+         */
+        public long getMetaspaceBefore() {
+            return metaspaceBefore;
+        }
+        
+        /**
+         * 统计时的Metaspace已用字节数（JVM不提供时为-1）
+         */
+        public long getMetaspaceAfter() {
+            return metaspaceAfter;
+        }
+        
+        @Override
+        public String toString() {
+            return String.format("共享依赖库: %d个引用/%d个不同JAR，共享%d个，隔离%d个；共享类%d个，避免重复定义%d个类；Metaspace %.1fMB -> %.1fMB",
+                jarReferences, uniqueJars, sharedJars, isolatedJars, sharedClasses, duplicateClassesAvoided,
+                metaspaceBefore / 1048576.0, metaspaceAfter / 1048576.0);
+        }
+    }
+}
@@ -0,0 +1,389 @@
+package com.freedomland.modloader;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 版本范围
+ * 支持的写法（与npm semver一致）：
+ * - "*" 或空：任意版本
+ * - "1.2.3" / "=1.2.3"：精确版本
+ * - "1.x"、"1.2.*"、"1.2"：通配（1.2 等价于 1.2.x）
+ * - "^1.2.3"：兼容版本（不改变最左侧非零位）
+ * - "~1.2.3"：近似版本（不改变minor）
+ * - ">=1.0 <2.0"：比较运算组合（空格表示"且"）
+ * - "1.0 - 2.0"：闭区间
+ * - "^1.0 || ^2.0"：多个范围取"或"
+ * 不符合语义化版本格式且不含运算符的文本按原字符串精确匹配（兼容旧的 "modId:version" 写法）。
+ *
+ * 预发布版本（如 2.0.0-alpha）与npm一致：只有当同一组条件中某个条件本身是同一 major.minor.patch 的预发布版本时才匹配，
+ * 因此 "^1.0.0"、"<2.0"、"1.x" 都不接受 2.0.0-alpha，">=2.0.0-alpha <2.0.0" 接受 2.0.0-beta。
+ * 与npm不同的是，"*" 和空范围匹配任何版本（包括预发布版本），未写版本要求的依赖不会因为对方是预发布版本而失败。
+ *
+ * 解析结果会被缓存，相同文本只解析一次。
+ */
+public final class VersionRange {
+    
+    private static final Map<String, VersionRange> CACHE = new ConcurrentHashMap<>();
+    
+    private final String text;
+    private final List<Interval> intervals; // 各区间取"或"
+    private final String exactText;         // 非语义化版本时按字符串精确匹配
+    
+    private VersionRange(String text, List<Interval> intervals, String exactText) {
+        this.text = text;
+        this.intervals = intervals;
+        this.exactText = exactText;
+    }
+    
+    /**
+     * 解析版本范围
+     * @throws IllegalArgumentException 含运算符但格式错误时抛出
+     */
+    public static VersionRange parse(String text) {
+        String key = text == null ? "" : text.trim();
+        VersionRange cached = CACHE.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        VersionRange range = doParse(key);
+        CACHE.putIfAbsent(key, range);
+        return range;
+    }
+    
+    private static VersionRange doParse(String text) {
+        List<Interval> intervals = new ArrayList<>();
+        for (String alternative : text.split("\\|\\|", -1)) {
+            Interval interval = parseAlternative(alternative.trim());
+            if (interval == null) {
+                // 不含运算符的非语义化版本号，按字符串精确匹配
+                if (!text.contains("||") && text.chars().noneMatch(c -> "<>=^~* ".indexOf(c) >= 0)) {
+                    return new VersionRange(text, Collections.emptyList(), text);
+                }
+                throw new IllegalArgumentException("无效的版本范围: " + text);
+            }
+            intervals.add(interval);
+        }
+        return new VersionRange(text, intervals, null);
+    }
+    
+    /**
+     * 解析一组以空格分隔、取"且"的比较条件
+     * @return 合并后的区间，格式错误返回null
+     */
+    private static Interval parseAlternative(String alternative) {
+        if (alternative.isEmpty()) {
+            return Interval.ANY;
+        }
+        String[] raw = alternative.split("\\s+");
+        
+        // 闭区间写法 "a - b"
+        if (raw.length == 3 && "-".equals(raw[1])) {
+            Partial from = Partial.parse(raw[0]);
+            Partial to = Partial.parse(raw[2]);
+            if (from == null || to == null) {
+                return null;
+            }
+            Interval low = from.specified == 0 ? Interval.ANY : new Interval(from.lower(), true, null, false);
+            Interval high = to.specified == 0 ? Interval.ANY
+                : to.isFull() ? new Interval(null, false, to.lower(), true) : new Interval(null, false, to.nextUp(), false);
+            return low.intersect(high);
+        }
+        
+        // 允许运算符与版本号之间有空格（如 ">= 1.0"）
+        List<String> tokens = new ArrayList<>();
+        for (int i = 0; i < raw.length; i++) {
+            String token = raw[i];
+            if (isOperator(token) && i + 1 < raw.length) {
+                token += raw[++i];
+            }
+            tokens.add(token);
+        }
+        
+        Interval result = Interval.ANY;
+        for (String token : tokens) {
+            Interval interval = parseComparator(token);
+            if (interval == null) {
+                return null;
+            }
+            result = result.intersect(interval);
+        }
+        return result;
+    }
+    
+    private static boolean isOperator(String token) {
+        return token.equals(">=") || token.equals("<=") || token.equals(">") || token.equals("<") ||
+            token.equals("=") || token.equals("^") || token.equals("~");
+    }
+    
+    /**
+     * 解析单个比较条件
+     */
+    private static Interval parseComparator(String token) {
+        String op = "";
+        if (token.startsWith(">=") || token.startsWith("<=")) {
+            op = token.substring(0, 2);
+        } else if (!token.isEmpty() && "<>=^~".indexOf(token.charAt(0)) >= 0) {
+            op = token.substring(0, 1);
+        }
+        Partial p = Partial.parse(token.substring(op.length()));
+        if (p == null) {
+            return null;
+        }
+        if (p.specified == 0) {
+            // "*"、">=*" 等均视为任意版本，"<*" 无意义
+            return op.equals("<") || op.equals(">") ? null : Interval.ANY;
+        }
+        
+        SemanticVersion low = p.lower();
+        switch (op) {
+            case "":
+            case "=":
+                return p.isFull() ? new Interval(low, true, low, true) : new Interval(low, true, p.nextUp(), false);
+            case ">=":
+                return new Interval(low, true, null, false);
+            case ">":
+                return p.isFull() ? new Interval(low, false, null, false) : new Interval(p.nextUp(), true, null, false);
+            case "<":
+                return new Interval(null, false, low, false);
+            case "<=":
+                return p.isFull() ? new Interval(null, false, low, true) : new Interval(null, false, p.nextUp(), false);
+            case "^":
+                return new Interval(low, true, p.caretUpper(), false);
+            case "~":
+                return new Interval(low, true, p.specified == 1 ? p.nextUp() : new SemanticVersion(p.major, p.minor + 1, 0), false);
+            default:
+                return null;
+        }
+    }
+    
+    /**
+     * 检查版本是否在范围内
+     */
+    public boolean matches(String version) {
+        if (exactText != null) {
+            return exactText.equals(version == null ? null : version.trim());
+        }
+        SemanticVersion parsed = SemanticVersion.tryParse(version);
+        if (parsed == null) {
+            return isAny();
+        }
+        return matches(parsed);
+    }
+    
+    /**
+     * 检查版本是否在范围内
+     */
+    public boolean matches(SemanticVersion version) {
+        if (exactText != null) {
+            return exactText.equals(version.toString());
+        }
+        for (Interval interval : intervals) {
+            if (interval.contains(version)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * 是否匹配任意版本
+     */
+    public boolean isAny() {
+        for (Interval interval : intervals) {
+            if (interval.low == null && interval.high == null) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    @Override
+    public String toString() {
+        return text.isEmpty() ? "*" : text;
+    }
+    
+    /**
+     * 可能带通配符的版本号（如 "1.x"、"1.2"）
+     */
+    private static final class Partial {
+        final int major;
+        final int minor;
+        final int patch;
+        final int specified; // 明确给出的数字段数（0~3）
+        final SemanticVersion full; // 三段齐全时的完整版本（含预发布标识）
+        
+        Partial(int major, int minor, int patch, int specified, SemanticVersion full) {
+            this.major = major;
+            this.minor = minor;
+            this.patch = patch;
+            this.specified = specified;
+            this.full = full;
+        }
+        
+        static Partial parse(String text) {
+            String s = text;
+            if (s.startsWith("v") || s.startsWith("V")) {
+                s = s.substring(1);
+            }
+            if (s.isEmpty()) {
+                return null;
+            }
+            // 带预发布/构建标识时必须是完整版本号
+            if (s.indexOf('-') >= 0 || s.indexOf('+') >= 0) {
+                SemanticVersion full = SemanticVersion.tryParse(s);
+                return full == null ? null : new Partial(full.getMajor(), full.getMinor(), full.getPatch(), 3, full);
+            }
+            String[] parts = s.split("\\.", -1);
+            if (parts.length > 3) {
+                return null;
+            }
+            int[] numbers = new int[3];
+            int specified = 0;
+            for (int i = 0; i < parts.length; i++) {
+                String part = parts[i];
+                if (part.equals("x") || part.equals("X") || part.equals("*")) {
+                    break; // 通配符之后的部分忽略
+                }
+                int value = SemanticVersion.parseNumber(part);
+                if (value < 0) {
+                    return null;
+                }
+                numbers[i] = value;
+                specified++;
+            }
+            SemanticVersion full = specified == 3 ? new SemanticVersion(numbers[0], numbers[1], numbers[2]) : null;
+            return new Partial(numbers[0], numbers[1], numbers[2], specified, full);
+        }
+        
+        boolean isFull() {
+            return specified == 3;
+        }
+        
+        SemanticVersion lower() {
+            return full != null ? full : new SemanticVersion(major, minor, patch);
+        }
+        
+        /**
+         * 通配部分的上界（不含）
+         */
+        SemanticVersion nextUp() {
+            return specified == 1 ? new SemanticVersion(major + 1, 0, 0) : new SemanticVersion(major, minor + 1, 0);
+        }
+        
+        /**
+         * ^ 运算的上界（不含）：最左侧非零位加一
+         */
+        SemanticVersion caretUpper() {
+            if (major > 0 || specified == 1) {
+                return new SemanticVersion(major + 1, 0, 0);
+            }
+            if (minor > 0 || specified == 2) {
+                return new SemanticVersion(0, minor + 1, 0);
+            }
+            return new SemanticVersion(0, 0, patch + 1);
+        }
+    }
+    
+    /**
+     * 版本区间（null表示无界）
+     */
+    private static final class Interval {
+        static final Interval ANY = new Interval(null, false, null, false);
+        
+        final SemanticVersion low;
+        final boolean lowInclusive;
+        final SemanticVersion high;
+        final boolean highInclusive;
+        final List<SemanticVersion> preReleases; // 条件中出现的预发布版本，允许同一major.minor.patch的预发布版本匹配
+        
+        Interval(SemanticVersion low, boolean lowInclusive, SemanticVersion high, boolean highInclusive) {
+            this(low, lowInclusive, high, highInclusive, preReleasesOf(low, high));
+        }
+        
+        private Interval(SemanticVersion low, boolean lowInclusive, SemanticVersion high, boolean highInclusive,
+                         List<SemanticVersion> preReleases) {
+            this.low = low;
+            this.lowInclusive = lowInclusive;
+            this.high = high;
+            this.highInclusive = highInclusive;
+            this.preReleases = preReleases;
+        }
+        
+        private static List<SemanticVersion> preReleasesOf(SemanticVersion low, SemanticVersion high) {
+            boolean lowPre = low != null && low.isPreRelease();
+            boolean highPre = high != null && high.isPreRelease();
+            if (!lowPre && !highPre) {
+                return Collections.emptyList();
+            }
+            List<SemanticVersion> result = new ArrayList<>(2);
+            if (lowPre) {
+                result.add(low);
+            }
+            if (highPre) {
+                result.add(high);
+            }
+            return result;
+        }
+        
+        boolean contains(SemanticVersion version) {
+            if (version.isPreRelease() && (low != null || high != null) && !allowsPreRelease(version)) {
+                return false;
+            }
+            if (low != null) {
+                int cmp = version.compareTo(low);
+                if (cmp < 0 || (cmp == 0 && !lowInclusive)) {
+                    return false;
+                }
+            }
+            if (high != null) {
+                int cmp = version.compareTo(high);
+                if (cmp > 0 || (cmp == 0 && !highInclusive)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        
+        private boolean allowsPreRelease(SemanticVersion version) {
+            for (SemanticVersion p : preReleases) {
+                if (p.getMajor() == version.getMajor() && p.getMinor() == version.getMinor() &&
+                    p.getPatch() == version.getPatch()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        
+        Interval intersect(Interval other) {
+            SemanticVersion newLow = low;
+            boolean newLowInclusive = lowInclusive;
+            if (other.low != null) {
+                int cmp = low == null ? -1 : low.compareTo(other.low);
+                if (cmp < 0 || (cmp == 0 && !other.lowInclusive)) {
+                    newLow = other.low;
+                    newLowInclusive = other.lowInclusive;
+                }
+            }
+            SemanticVersion newHigh = high;
+            boolean newHighInclusive = highInclusive;
+            if (other.high != null) {
+                int cmp = high == null ? 1 : high.compareTo(other.high);
+                if (cmp > 0 || (cmp == 0 && !other.highInclusive)) {
+                    newHigh = other.high;
+                    newHighInclusive = other.highInclusive;
+                }
+            }
+            // 被合并掉的条件同样保留其预发布版本（与npm逐条检查条件一致）
+            List<SemanticVersion> merged = preReleases;
+            if (!other.preReleases.isEmpty()) {
+                merged = new ArrayList<>(preReleases);
+                merged.addAll(other.preReleases);
+            }
+            return new Interval(newLow, newLowInclusive, newHigh, newHighInclusive, merged);
+        }
+    }
+}
@@ -0,0 +1,431 @@
+package com.freedomland.modloader;
+
+import com.freedomland.modloader.DependencyResolver.DependencyException;
+import java.util.*;
+
+/**
+ * 多版本选择器
+ * 同一模组ID安装了多个版本时，为每个ID选出一个版本，使所有强制依赖的版本范围同时满足。
+ *
+ * 实现：
+ * - 每个ID是一个变量，候选版本从新到旧编号，可选集合用long位掩码表示（每个ID最多64个版本）
+ * - "候选版本 -> 依赖ID的允许版本掩码"预先计算一次，同一依赖ID上相同的范围文本只匹配一次
+ * - 约束双向传播（弧相容）：依赖ID的可选集合缩小时，删去依赖者中无法满足的候选版本；
+ *   依赖者的可选集合缩小时，删去依赖ID中不再被任何候选版本接受的版本
+ * - 按"依赖者在前、被依赖者在后"的顺序赋值，优先选择较新的版本，失败时回溯
+ */
+class VersionSelector {
+    
+    // 每个模组ID最多参与选择的版本数（位掩码宽度）
+    private static final int MAX_CANDIDATES = 64;
+    
+    // 搜索步数上限（版本选择在最坏情况下是指数级的，避免启动时卡死）
+    private static final int MAX_STEPS = 1_000_000;
+    
+    private final String[] ids;               // 变量编号 -> 模组ID（按ID排序）
+    private final ModConfig[][] candidates;   // 变量编号 -> 候选版本（新版本在前）
+    private final int[][] deps;               // 变量编号 -> 依赖的变量（任一候选版本依赖即计入）
+    private final long[][][] constraints;     // [变量][候选][第j个依赖变量] -> 允许的版本掩码（不依赖时为全部）
+    private final int[][] dependents;         // 变量编号 -> 依赖它的变量
+    private final int[][] dependentSlots;     // 变量编号 -> 自己在对应依赖者deps中的下标
+    private final int[] order;                // 赋值顺序 -> 变量编号
+    
+    // 搜索状态
+    private final long[] domains;             // 变量编号 -> 当前可选版本掩码
+    private int[] trailVars = new int[64];    // 撤销记录：变量、原掩码
+    private long[] trailMasks = new long[64];
+    private int trailSize;
+    private final int[] queue;
+    private final boolean[] queued;
+    
+    // 最深处的失败原因（用于报错）
+    private int conflictDepth = -2;
+    private String conflict;
+    private final String[] invalidReasons; // 变量编号 -> 候选版本被预先排除的原因
+    
+    VersionSelector(Map<String, List<ModConfig>> modCandidates) {
+        int n = modCandidates.size();
+        ids = modCandidates.keySet().toArray(new String[0]);
+        Arrays.sort(ids);
+        Map<String, Integer> index = new HashMap<>(n * 2);
+        for (int i = 0; i < n; i++) {
+            index.put(ids[i], i);
+        }
+        
+        candidates = new ModConfig[n][];
+        for (int i = 0; i < n; i++) {
+            List<ModConfig> list = new ArrayList<>(modCandidates.get(ids[i]));
+            list.sort(VersionSelector::compareNewestFirst);
+            if (list.size() > MAX_CANDIDATES) {
+                System.err.println("警告: 模组 '" + ids[i] + "' 的版本过多，只考虑最新的" + MAX_CANDIDATES + "个");
+                list = list.subList(0, MAX_CANDIDATES);
+            }
+            candidates[i] = list.toArray(new ModConfig[0]);
+        }
+        
+        // 预先计算依赖约束，同一依赖ID上相同的范围只匹配一次
+        domains = new long[n];
+        invalidReasons = new String[n];
+        deps = new int[n][];
+        constraints = new long[n][][];
+        List<Map<String, Long>> rangeMemo = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            rangeMemo.add(new HashMap<>());
+        }
+        List<Set<Integer>> dependsOn = new ArrayList<>(n);
+        int[] dependentCount = new int[n];
+        for (int v = 0; v < n; v++) {
+            // 该ID所有候选版本的依赖并集，按编号排序
+            TreeMap<Integer, long[]> byTarget = new TreeMap<>();
+            int count = candidates[v].length;
+            for (int c = 0; c < candidates[v].length; c++) {
+                ModConfig mod = candidates[v][c];
+                boolean valid = true;
+                Map<Integer, Long> masks = new HashMap<>();
+                for (String dependency : mod.getRequiredDependencies()) {
+                    String[] parts = DependencyResolver.parseDependency(dependency);
+                    Integer target = index.get(parts[0]);
+                    if (target == null) {
+                        invalidReasons[v] = "模组 '" + mod.getModId() + "' (v" + mod.getVersion() +
+                            ") 的强制依赖 '" + parts[0] + "' 未找到";
+                        valid = false;
+                        break;
+                    }
+                    long mask;
+                    try {
+                        mask = rangeMemo.get(target).computeIfAbsent(parts[1], r -> allowedMask(target, r));
+                    } catch (IllegalArgumentException e) {
+                        invalidReasons[v] = "模组 '" + mod.getModId() + "' 的依赖 '" + dependency + "' 版本范围格式错误";
+                        valid = false;
+                        break;
+                    }
+                    masks.merge(target, mask, (a, b) -> a & b);
+                }
+                // 依赖缺失或范围无效的候选版本从一开始就不可选
+                if (!valid) {
+                    continue;
+                }
+                domains[v] |= 1L << c;
+                for (Map.Entry<Integer, Long> entry : masks.entrySet()) {
+                    long[] row = byTarget.computeIfAbsent(entry.getKey(), k -> {
+                        long[] all = new long[count];
+                        Arrays.fill(all, -1L);
+                        return all;
+                    });
+                    row[c] = entry.getValue();
+                }
+            }
+            deps[v] = new int[byTarget.size()];
+            constraints[v] = new long[candidates[v].length][byTarget.size()];
+            int j = 0;
+            for (Map.Entry<Integer, long[]> entry : byTarget.entrySet()) {
+                deps[v][j] = entry.getKey();
+                for (int c = 0; c < candidates[v].length; c++) {
+                    constraints[v][c][j] = entry.getValue()[c];
+                }
+                dependentCount[entry.getKey()]++;
+                j++;
+            }
+            dependsOn.add(byTarget.keySet());
+        }
+        
+        // 反向索引：依赖者及其约束列
+        dependents = new int[n][];
+        dependentSlots = new int[n][];
+        for (int v = 0; v < n; v++) {
+            dependents[v] = new int[dependentCount[v]];
+            dependentSlots[v] = new int[dependentCount[v]];
+        }
+        int[] fill = new int[n];
+        for (int v = 0; v < n; v++) {
+            for (int j = 0; j < deps[v].length; j++) {
+                int target = deps[v][j];
+                dependents[target][fill[target]] = v;
+                dependentSlots[target][fill[target]] = j;
+                fill[target]++;
+            }
+        }
+        
+        // 赋值顺序：依赖者在前（DFS后序的逆序），同等条件按ID排序
+        order = new int[n];
+        int[] postOrder = postOrder(dependsOn);
+        for (int i = 0; i < n; i++) {
+            order[i] = postOrder[n - 1 - i];
+        }
+        queue = new int[n];
+        queued = new boolean[n];
+    }
+    
+    /**
+     * 计算依赖ID中满足版本范围的候选掩码
+     */
+    private long allowedMask(int target, String rangeText) {
+        VersionRange range = VersionRange.parse(rangeText);
+        long mask = 0;
+        for (int c = 0; c < candidates[target].length; c++) {
+            ModConfig candidate = candidates[target][c];
+            SemanticVersion version = candidate.getSemanticVersion();
+            boolean ok = version != null ? range.matches(version) : range.matches(candidate.getVersion());
+            if (ok) {
+                mask |= 1L << c;
+            }
+        }
+        return mask;
+    }
+    
+    /**
+     * 选出每个模组ID的版本
+     * @return modId -> 选中的模组配置
+     * @throws DependencyException 无法同时满足所有依赖时抛出
+     */
+    Map<String, ModConfig> select() throws DependencyException {
+        int n = ids.length;
+        for (int v = 0; v < n; v++) {
+            if (domains[v] == 0) {
+                throw new DependencyException(invalidReasons[v]);
+            }
+        }
+        // 先整体传播一次，删去注定无法满足的候选版本
+        for (int v = 0; v < n; v++) {
+            queue[v] = v;
+            queued[v] = true;
+        }
+        if (!propagate(n, -1)) {
+            throw new DependencyException(conflict);
+        }
+        
+        long[] remaining = new long[n];
+        int[] trailMark = new int[n];
+        int depth = 0;
+        int steps = 0;
+        boolean entering = true;
+        while (depth < n) {
+            if (++steps > MAX_STEPS) {
+                throw new DependencyException("模组版本依赖过于复杂，无法在" + MAX_STEPS + "步内求解" +
+                    (conflict != null ? "，最近的冲突: " + conflict : ""));
+            }
+            int var = order[depth];
+            if (entering) {
+                remaining[depth] = domains[var];
+                trailMark[depth] = trailSize;
+            } else {
+                undo(trailMark[depth]);
+            }
+            if (remaining[depth] == 0) {
+                if (depth == 0) {
+                    throw new DependencyException(conflict != null ? conflict : "无法满足模组之间的版本依赖");
+                }
+                depth--;
+                entering = false;
+                continue;
+            }
+            
+            long bit = Long.lowestOneBit(remaining[depth]); // 优先选择较新的版本
+            remaining[depth] &= ~bit;
+            if (domains[var] != bit) {
+                narrow(var, bit);
+                queue[0] = var;
+                queued[var] = true;
+                if (!propagate(1, depth)) {
+                    entering = false;
+                    continue;
+                }
+            }
+            depth++;
+            entering = true;
+        }
+        
+        Map<String, ModConfig> result = new HashMap<>(n * 2);
+        for (int v = 0; v < n; v++) {
+            result.put(ids[v], candidates[v][Long.numberOfTrailingZeros(domains[v])]);
+        }
+        return result;
+    }
+    
+    /**
+     * 传播变量的变化，直到所有约束都相容
+     * @param size 队列中已放入的变量数（queue[0..size)）
+     * @return false=某个变量的可选集合被清空
+     */
+    private boolean propagate(int size, int depth) {
+        int head = 0;
+        int n = queue.length;
+        while (size > 0) {
+            int x = queue[head];
+            head = (head + 1) % n;
+            size--;
+            queued[x] = false;
+            
+            // 依赖者：删去对x的要求已无法满足的候选版本
+            for (int i = 0; i < dependents[x].length; i++) {
+                int a = dependents[x][i];
+                int j = dependentSlots[x][i];
+                long domain = domains[a];
+                long keep = domain;
+                int lastRemoved = -1;
+                for (long rest = domain; rest != 0; rest &= rest - 1) {
+                    int c = Long.numberOfTrailingZeros(rest);
+                    if ((constraints[a][c][j] & domains[x]) == 0) {
+                        keep &= ~(1L << c);
+                        lastRemoved = c;
+                    }
+                }
+                if (keep != domain) {
+                    if (keep == 0) {
+                        ModConfig mod = candidates[a][lastRemoved];
+                        recordConflict(depth, "模组 '" + mod.getModId() + "' (v" + mod.getVersion() + ") 需要 '" +
+                            ids[x] + "' 的版本满足 '" + describeRange(mod, ids[x]) + "', 可用版本: " + describe(x, domains[x]));
+                        clearQueue();
+                        return false;
+                    }
+                    narrow(a, keep);
+                    if (!queued[a]) {
+                        queued[a] = true;
+                        queue[(head + size++) % n] = a;
+                    }
+                }
+            }
+            
+            // 依赖：只保留仍被x的某个候选版本接受的版本
+            for (int j = 0; j < deps[x].length; j++) {
+                int b = deps[x][j];
+                long support = 0;
+                for (long rest = domains[x]; rest != 0 && support != -1L; rest &= rest - 1) {
+                    support |= constraints[x][Long.numberOfTrailingZeros(rest)][j];
+                }
+                long keep = domains[b] & support;
+                if (keep != domains[b]) {
+                    if (keep == 0) {
+                        if (Long.bitCount(domains[x]) == 1) {
+                            ModConfig mod = candidates[x][Long.numberOfTrailingZeros(domains[x])];
+                            recordConflict(depth, "模组 '" + mod.getModId() + "' (v" + mod.getVersion() + ") 需要 '" +
+                                ids[b] + "' 的版本满足 '" + describeRange(mod, ids[b]) + "', 可用版本: " + describe(b, domains[b]));
+                        } else {
+                            recordConflict(depth, "模组 '" + ids[b] + "' 没有同时满足所有依赖者要求的版本，'" + ids[x] +
+                                "' 可接受的版本与其他依赖者冲突，可用版本: " + describe(b, domains[b]));
+                        }
+                        clearQueue();
+                        return false;
+                    }
+                    narrow(b, keep);
+                    if (!queued[b]) {
+                        queued[b] = true;
+                        queue[(head + size++) % n] = b;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+    
+    private void clearQueue() {
+        Arrays.fill(queued, false);
+    }
+    
+    private void narrow(int var, long mask) {
+        if (trailSize == trailVars.length) {
+            trailVars = Arrays.copyOf(trailVars, trailSize * 2);
+            trailMasks = Arrays.copyOf(trailMasks, trailSize * 2);
+        }
+        trailVars[trailSize] = var;
+        trailMasks[trailSize] = domains[var];
+        trailSize++;
+        domains[var] = mask;
+    }
+    
+    private void undo(int mark) {
+        while (trailSize > mark) {
+            trailSize--;
+            domains[trailVars[trailSize]] = trailMasks[trailSize];
+        }
+    }
+    
+    private void recordConflict(int depth, String message) {
+        if (depth >= conflictDepth) {
+            conflictDepth = depth;
+            conflict = message;
+        }
+    }
+    
+    /**
+     * 模组对某个依赖ID声明的版本范围（多次声明时以" "连接）
+     */
+    private static String describeRange(ModConfig mod, String targetId) {
+        StringBuilder sb = new StringBuilder();
+        for (String dependency : mod.getRequiredDependencies()) {
+            String[] parts = DependencyResolver.parseDependency(dependency);
+            if (parts[0].equals(targetId)) {
+                if (sb.length() > 0) {
+                    sb.append(' ');
+                }
+                sb.append(parts[1]);
+            }
+        }
+        return sb.toString();
+    }
+    
+    private String describe(int var, long mask) {
+        List<String> versions = new ArrayList<>();
+        for (int c = 0; c < candidates[var].length; c++) {
+            if ((mask & (1L << c)) != 0) {
+                versions.add(candidates[var][c].getVersion());
+            }
+        }
+        return versions.isEmpty() ? "无" : versions.toString();
+    }
+    
+    /**
+     * 依赖图的DFS后序（被依赖者在前），从编号小的变量开始，结果确定
+     */
+    private static int[] postOrder(List<Set<Integer>> dependsOn) {
+        int n = dependsOn.size();
+        int[] result = new int[n];
+        int size = 0;
+        boolean[] visited = new boolean[n];
+        int[] stack = new int[n];
+        List<Iterator<Integer>> iterators = new ArrayList<>(Collections.nCopies(n, null));
+        for (int start = 0; start < n; start++) {
+            if (visited[start]) {
+                continue;
+            }
+            int top = 0;
+            stack[0] = start;
+            visited[start] = true;
+            iterators.set(start, dependsOn.get(start).iterator());
+            while (top >= 0) {
+                int node = stack[top];
+                Iterator<Integer> it = iterators.get(node);
+                if (it.hasNext()) {
+                    int dep = it.next();
+                    if (!visited[dep]) {
+                        visited[dep] = true;
+                        iterators.set(dep, dependsOn.get(dep).iterator());
+                        stack[++top] = dep;
+                    }
+                } else {
+                    result[size++] = node;
+                    top--;
+                }
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * 同一ID的候选版本排序：语义化版本从新到旧，无法解析的版本排在最后（按字符串倒序）
+     */
+    static int compareNewestFirst(ModConfig a, ModConfig b) {
+        SemanticVersion va = a.getSemanticVersion();
+        SemanticVersion vb = b.getSemanticVersion();
+        if (va != null && vb != null) {
+            return vb.compareTo(va);
+        }
+        if (va != null) {
+            return -1;
+        }
+        if (vb != null) {
+            return 1;
+        }
+        return b.getVersion().compareTo(a.getVersion());
+    }
+}
@@ -7,6 +7,7 @@ import java.util.*;
  * 用于管理游戏中的核心对象（方块、实体、生物群系等）
  * 
  * 参考Minecraft的Registry机制
+ * 注册和查询是线程安全的（模组可能并行初始化）；getIds/getValues返回调用时的快照
  */
 public class Registry<T> {
     
@@ -30,7 +31,7 @@ public class Registry<T> {
      * @return 注册的对象实例
      * @throws DuplicateIdException ID已存在时抛出
      */
-    public T register(String id, T entry) throws DuplicateIdException {
+    public synchronized T register(String id, T entry) throws DuplicateIdException {
         if (entries.containsKey(id)) {
             throw new DuplicateIdException("注册表 '" + name + "' 中ID已存在: " + id);
         }
@@ -46,7 +47,7 @@ public class Registry<T> {
      * @param id 唯一ID
      * @return 对象实例，不存在返回null
      */
-    public T get(String id) {
+    public synchronized T get(String id) {
         return entries.get(id);
     }
     
@@ -55,7 +56,7 @@ public class Registry<T> {
      * @param entry 对象实例
      * @return 唯一ID，不存在返回null
      */
-    public String getId(T entry) {
+    public synchronized String getId(T entry) {
         return reverse.get(entry);
     }
     
@@ -64,37 +65,64 @@ public class Registry<T> {
      * @param id 唯一ID
      * @return true=存在
      */
-    public boolean contains(String id) {
+    public synchronized boolean contains(String id) {
         return entries.containsKey(id);
     }
     
     /**
      * 获取所有已注册的ID
-     * @return ID集合（不可修改）
+     * @return 调用时的ID快照（不可修改，按注册顺序）
      */
-    public Set<String> getIds() {
-        return Collections.unmodifiableSet(entries.keySet());
+    public synchronized Set<String> getIds() {
+        return Collections.unmodifiableSet(new LinkedHashSet<>(entries.keySet()));
     }
     
     /**
      * 获取所有已注册的对象
-     * @return 对象集合（不可修改）
+     * @return 调用时的对象快照（不可修改，按注册顺序）
      */
-    public Collection<T> getValues() {
-        return Collections.unmodifiableCollection(entries.values());
+    public synchronized Collection<T> getValues() {
+        return Collections.unmodifiableList(new ArrayList<>(entries.values()));
     }
     
     /**
      * 获取注册表大小
      */
-    public int size() {
+    public synchronized int size() {
         return entries.size();
     }
     
+    /**
+     * 移除命名空间下的所有条目（模组重载时调用）
+     * @param namespace 命名空间（即modId，匹配"namespace:"开头的ID）
+     * @return 移除的条目数
+     */
+    public synchronized int removeNamespace(String namespace) {
+        String prefix = namespace + ":";
+        int removed = 0;
+        Iterator<Map.Entry<String, T>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, T> entry = iterator.next();
+            if (entry.getKey().startsWith(prefix)) {
+                reverse.remove(entry.getValue());
+                iterator.remove();
+                removed++;
+            }
+        }
+        return removed;
+    }
+    
+    /**
+     * 获取注册表名称
+     */
+    public String getName() {
+        return name;
+    }
+    
     /**
      * 清空注册表
      */
-    public void clear() {
+    public synchronized void clear() {
         entries.clear();
         reverse.clear();
     }
@@ -0,0 +1,109 @@
+package com.freedomland.modloader;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * DependencyResolver.resolveLoadLayers的规模基准
+ * 生成N个合成模组（固定随机种子），每个模组对编号更小的模组有0~3个必需依赖（带版本范围），
+ * 分别测量N=10000和N=20000时的耗时并输出比值：线性实现的比值应接近2（平方级会接近4）。
+ * 同时校验结果：每个依赖都必须出现在更早的加载层中，否则抛出AssertionError。
+ *
+ * 运行：java -cp <classes>:gson.jar com.freedomland.modloader.DependencyResolverBenchmark [模组数]
+ */
+public class DependencyResolverBenchmark {
+    
+    private static final long SEED = 20240601L;
+    private static final int WARMUP = 10;
+    private static final int ITERATIONS = 10;
+    
+    public static void main(String[] args) throws Exception {
+        int base = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        Map<String, ModConfig> small = generate(base);
+        Map<String, ModConfig> large = generate(base * 2);
+        
+        // 先让两种规模都跑过一遍，避免先测的一方承担JIT编译开销
+        measure(small);
+        measure(large);
+        double smallMs = measure(small);
+        double largeMs = measure(large);
+        System.out.printf("%d个模组: %.2f ms%n", base, smallMs);
+        System.out.printf("%d个模组: %.2f ms%n", base * 2, largeMs);
+        System.out.printf("耗时比值: %.2f（线性约为2）%n", largeMs / smallMs);
+    }
+    
+    /**
+     * 生成count个合成模组，mod-i只依赖编号小于i的模组，保证无环
+     */
+    static Map<String, ModConfig> generate(int count) {
+        Random random = new Random(SEED);
+        Map<String, ModConfig> mods = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            JsonObject json = new JsonObject();
+            json.addProperty("modId", "mod" + i);
+            json.addProperty("version", "1." + (i % 10) + ".0");
+            json.addProperty("entryClass", "bench.Mod" + i);
+            JsonArray required = new JsonArray();
+            int deps = i == 0 ? 0 : random.nextInt(4);
+            for (int d = 0; d < deps; d++) {
+                int target = random.nextInt(i);
+                required.add("mod" + target + ":>=1.0.0");
+            }
+            if (required.size() > 0) {
+                JsonObject dependencies = new JsonObject();
+                dependencies.add("required", required);
+                json.add("dependencies", dependencies);
+            }
+            ModConfig config = ModConfig.fromJson(json);
+            mods.put(config.getModId(), config);
+        }
+        return mods;
+    }
+    
+    /**
+     * 预热后取多次运行的平均耗时（毫秒），并校验一次分层结果
+     */
+    private static double measure(Map<String, ModConfig> mods) throws Exception {
+        DependencyResolver resolver = new DependencyResolver();
+        for (int i = 0; i < WARMUP; i++) {
+            resolver.resolveLoadLayers(mods);
+        }
+        long total = 0;
+        List<List<ModConfig>> layers = null;
+        for (int i = 0; i < ITERATIONS; i++) {
+            long start = System.nanoTime();
+            layers = resolver.resolveLoadLayers(mods);
+            total += System.nanoTime() - start;
+        }
+        verify(mods, layers);
+        return total / 1e6 / ITERATIONS;
+    }
+    
+    private static void verify(Map<String, ModConfig> mods, List<List<ModConfig>> layers) {
+        Map<String, Integer> layerOf = new HashMap<>();
+        for (int layer = 0; layer < layers.size(); layer++) {
+            for (ModConfig config : layers.get(layer)) {
+                layerOf.put(config.getModId(), layer);
+            }
+        }
+        if (layerOf.size() != mods.size()) {
+            throw new AssertionError("分层结果包含" + layerOf.size() + "个模组，预期" + mods.size());
+        }
+        for (ModConfig config : mods.values()) {
+            int layer = layerOf.get(config.getModId());
+            for (String dependency : config.getRequiredDependencies()) {
+                String depId = DependencyResolver.parseDependency(dependency)[0];
+                Integer depLayer = layerOf.get(depId);
+                if (depLayer == null || depLayer >= layer) {
+                    throw new AssertionError(config.getModId() + "（第" + layer + "层）的依赖" + depId
+                        + "不在更早的层中");
+                }
+            }
+        }
+    }
+}
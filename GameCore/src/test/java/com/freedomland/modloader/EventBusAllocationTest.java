@@ -0,0 +1,71 @@
+package com.freedomland.modloader;
+
+import com.freedomland.api.event.EventPriority;
+import com.freedomland.api.event.GameEvent;
+import java.lang.management.ManagementFactory;
+
+/**
+ * EventBus.post分发零分配回归测试
+ * 用HotSpot的线程分配计数（com.sun.management.ThreadMXBean）统计预热后多次post期间本线程分配的字节数，
+ * 覆盖普通分发、父类监听器、事件被取消后跳过监听器三种路径；超过阈值时抛出AssertionError（进程以非0退出）。
+ *
+ * 运行：java -cp <classes> com.freedomland.modloader.EventBusAllocationTest
+ */
+public class EventBusAllocationTest {
+    
+    private static final int WARMUP = 200_000;
+    private static final int POSTS = 1_000_000;
+    
+    // 允许的分配量：计数接口本身和偶发的JIT/安全点分配，远小于每次post分配一个对象（≥16MB）
+    private static final long MAX_ALLOCATED_BYTES = 64 * 1024;
+    
+    static class TestEvent extends GameEvent {
+    }
+    
+    static final class ChildEvent extends TestEvent {
+    }
+    
+    private static int received;
+    
+    public static void main(String[] args) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!threads.isThreadAllocatedMemorySupported()) {
+            System.out.println("当前JVM不支持线程分配统计，跳过");
+            return;
+        }
+        threads.setThreadAllocatedMemoryEnabled(true);
+        
+        EventBus bus = new EventBus();
+        bus.subscribe(TestEvent.class, event -> received++);
+        bus.subscribe(TestEvent.class, event -> received++, EventPriority.HIGH, false);
+        bus.subscribe(ChildEvent.class, event -> event.setCancelled(received % 2 == 0), EventPriority.HIGHEST, false);
+        bus.subscribe(GameEvent.class, event -> received++, EventPriority.MONITOR, true);
+        
+        TestEvent plain = new TestEvent();
+        ChildEvent child = new ChildEvent();
+        
+        check(threads, bus, plain, "普通分发");
+        check(threads, bus, child, "父类监听器与取消跳过");
+        System.out.println("EventBus.post零分配检查通过（received=" + received + "）");
+    }
+    
+    private static void check(com.sun.management.ThreadMXBean threads, EventBus bus, GameEvent event, String name) {
+        long thread = Thread.currentThread().getId();
+        for (int i = 0; i < WARMUP; i++) {
+            event.setCancelled(false);
+            bus.post(event);
+        }
+        
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < POSTS; i++) {
+            event.setCancelled(false);
+            bus.post(event);
+        }
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+        
+        System.out.println(name + ": " + POSTS + "次post分配" + allocated + "字节");
+        if (allocated > MAX_ALLOCATED_BYTES) {
+            throw new AssertionError(name + ": post分配了" + allocated + "字节，超过阈值" + MAX_ALLOCATED_BYTES);
+        }
+    }
+}
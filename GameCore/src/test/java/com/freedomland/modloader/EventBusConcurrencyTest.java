@@ -0,0 +1,95 @@
+package com.freedomland.modloader;
+
+import com.freedomland.api.event.GameEvent;
+import com.freedomland.api.event.IEventBus;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * EventBus监听器列表的并发压力测试（覆盖ListenerList的CAS无锁更新）
+ * 8个线程同时各订阅5000个监听器、再取消其中一半，另一个线程不停发布事件；
+ * 结束后监听器数量必须与预期完全一致（没有丢失或多出的更新），再发布一次时每个剩余监听器恰好收到一次。
+ * 不一致时抛出AssertionError（进程以非0退出）。
+ *
+ * 运行：java -cp <classes> com.freedomland.modloader.EventBusConcurrencyTest [轮数]
+ */
+public class EventBusConcurrencyTest {
+    
+    private static final int THREADS = 8;
+    private static final int LISTENERS_PER_THREAD = 5000;
+    
+    static final class TestEvent extends GameEvent {
+    }
+    
+    public static void main(String[] args) throws Exception {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        for (int round = 0; round < rounds; round++) {
+            runRound(round);
+        }
+        System.out.println("EventBus并发订阅/取消/发布测试通过（" + rounds + "轮）");
+    }
+    
+    private static void runRound(int round) throws InterruptedException {
+        EventBus bus = new EventBus();
+        AtomicLong calls = new AtomicLong();
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        CountDownLatch start = new CountDownLatch(1);
+        
+        Thread poster = new Thread(() -> {
+            TestEvent event = new TestEvent();
+            while (running.get()) {
+                bus.post(event);
+            }
+        }, "poster");
+        poster.setUncaughtExceptionHandler((t, e) -> failure.set(e));
+        poster.start();
+        
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            Thread worker = new Thread(() -> {
+                List<IEventBus.EventListener<TestEvent>> own = new ArrayList<>(LISTENERS_PER_THREAD);
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < LISTENERS_PER_THREAD; i++) {
+                    IEventBus.EventListener<TestEvent> listener = event -> calls.incrementAndGet();
+                    own.add(listener);
+                    bus.subscribe(TestEvent.class, listener);
+                }
+                for (int i = 0; i < LISTENERS_PER_THREAD; i += 2) {
+                    bus.unsubscribe(TestEvent.class, own.get(i));
+                }
+            }, "worker-" + t);
+            worker.setUncaughtExceptionHandler((th, e) -> failure.set(e));
+            workers.add(worker);
+            worker.start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        running.set(false);
+        poster.join();
+        
+        if (failure.get() != null) {
+            throw new AssertionError("第" + round + "轮: 线程抛出异常", failure.get());
+        }
+        int expected = THREADS * (LISTENERS_PER_THREAD / 2);
+        int count = bus.getListenerCount(TestEvent.class);
+        if (count != expected) {
+            throw new AssertionError("第" + round + "轮: 监听器数量" + count + "，预期" + expected);
+        }
+        calls.set(0);
+        bus.post(new TestEvent());
+        if (calls.get() != expected) {
+            throw new AssertionError("第" + round + "轮: 发布后调用" + calls.get() + "次，预期" + expected);
+        }
+    }
+}
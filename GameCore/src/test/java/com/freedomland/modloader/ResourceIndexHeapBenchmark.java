@@ -0,0 +1,161 @@
+package com.freedomland.modloader;
+
+import com.google.gson.JsonObject;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * ResourceInjector资源索引的常驻堆内存对比
+ * 模拟300个目录模组共200100个资源文件：100100个生效路径，另有100000个被覆盖的候选。
+ * 分别构建旧结构（两个以完整路径为键的ConcurrentHashMap，保存每个资源的绝对路径，
+ * 外加资源路径 -> 被覆盖候选列表的HashMap）和当前的ResourceIndex（经restore/restoreShadowed），
+ * 在GC之后测量构建前后的已用堆内存差值并输出。
+ *
+ * 运行：java -Xmx1g -cp <classes>:gson.jar com.freedomland.modloader.ResourceIndexHeapBenchmark
+ */
+public class ResourceIndexHeapBenchmark {
+    
+    private static final int MODS = 300;
+    private static final int WINNING = 100_100;
+    private static final int SHADOWED = 100_000;
+    private static final String[] CATEGORIES = {
+        "textures/block", "textures/item", "textures/entity", "models/block",
+        "models/item", "sounds/ambient", "lang", "shaders/core"
+    };
+    
+    private static Object retained; // 测量期间保持结构可达
+    
+    public static void main(String[] args) {
+        ModConfig[] mods = createMods();
+        
+        long before = usedHeap();
+        retained = buildOldLayout(mods);
+        long oldBytes = usedHeap() - before;
+        retained = null;
+        
+        before = usedHeap();
+        ResourceInjector injector = buildResourceIndex(mods);
+        retained = injector;
+        long newBytes = usedHeap() - before;
+        
+        if (injector.getResourceCount() != WINNING) {
+            throw new AssertionError("生效资源数" + injector.getResourceCount() + "，预期" + WINNING);
+        }
+        System.out.printf("资源文件: %d（生效%d，被覆盖%d），模组: %d%n",
+            WINNING + SHADOWED, WINNING, SHADOWED, MODS);
+        System.out.printf("旧结构（路径哈希表+绝对路径）: %.1f MB%n", oldBytes / 1048576.0);
+        System.out.printf("ResourceIndex: %.1f MB%n", newBytes / 1048576.0);
+        retained = null;
+    }
+    
+    private static ModConfig[] createMods() {
+        ModConfig[] mods = new ModConfig[MODS];
+        File modsDir = new File("mods").getAbsoluteFile();
+        for (int i = 0; i < MODS; i++) {
+            JsonObject json = new JsonObject();
+            json.addProperty("modId", "bench_mod_" + i);
+            json.addProperty("version", "1.0.0");
+            json.addProperty("entryClass", "bench.Mod" + i);
+            mods[i] = ModConfig.fromJson(json);
+            mods[i].setModSource(new File(modsDir, "bench_mod_" + i));
+        }
+        return mods;
+    }
+    
+    /**
+     * 第i个资源路径（每次调用生成新的字符串，与每个模组各自扫描目录时的情况一致）
+     */
+    private static String resourcePath(int i) {
+        return "assets/freedomland/" + CATEGORIES[i % CATEGORIES.length] + "/res_" + i + ".png";
+    }
+    
+    private static ModConfig winner(ModConfig[] mods, int i) {
+        return mods[i % MODS];
+    }
+    
+    private static ModConfig shadowedOwner(ModConfig[] mods, int i) {
+        return mods[(i + 1) % MODS];
+    }
+    
+    /**
+     * 按旧版ResourceInjector的字段布局构建最终状态
+     */
+    private static Object[] buildOldLayout(ModConfig[] mods) {
+        Map<String, String> resourceMap = new ConcurrentHashMap<>();
+        Map<String, ModConfig> resourceOwners = new ConcurrentHashMap<>();
+        Map<String, List<OldShadowedResource>> shadowed = new HashMap<>();
+        for (int i = 0; i < WINNING; i++) {
+            String path = resourcePath(i);
+            ModConfig owner = winner(mods, i);
+            resourceMap.put(path, new File(owner.getModSource(), path).getAbsolutePath());
+            resourceOwners.put(path, owner);
+        }
+        for (int i = 0; i < SHADOWED; i++) {
+            String path = resourcePath(i);
+            ModConfig owner = shadowedOwner(mods, i);
+            shadowed.computeIfAbsent(path, k -> new ArrayList<>(1))
+                .add(new OldShadowedResource(new File(owner.getModSource(), path).getAbsolutePath(), owner));
+        }
+        return new Object[] {resourceMap, resourceOwners, shadowed};
+    }
+    
+    private static ResourceInjector buildResourceIndex(ModConfig[] mods) {
+        ResourceInjector injector = new ResourceInjector();
+        String[] paths = new String[WINNING];
+        ModConfig[] owners = new ModConfig[WINNING];
+        for (int i = 0; i < WINNING; i++) {
+            paths[i] = resourcePath(i);
+            owners[i] = winner(mods, i);
+        }
+        injector.restore(paths, owners);
+        
+        paths = new String[SHADOWED];
+        owners = new ModConfig[SHADOWED];
+        for (int i = 0; i < SHADOWED; i++) {
+            paths[i] = resourcePath(i);
+            owners[i] = shadowedOwner(mods, i);
+        }
+        injector.restoreShadowed(paths, owners);
+        return injector;
+    }
+    
+    /**
+     * 多次GC直到已用堆内存稳定后返回
+     */
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 10; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            long now = runtime.totalMemory() - runtime.freeMemory();
+            if (Math.abs(used - now) < 64 * 1024) {
+                return now;
+            }
+            used = now;
+        }
+        return used;
+    }
+    
+    /**
+     * 旧版的被覆盖候选（实际路径 + 所属模组）
+     */
+    private static final class OldShadowedResource {
+        final String actualPath;
+        final ModConfig owner;
+        
+        OldShadowedResource(String actualPath, ModConfig owner) {
+            this.actualPath = actualPath;
+            this.owner = owner;
+        }
+    }
+}